@@ -0,0 +1,46 @@
+package de.shoptimax;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.plugin.LocalMetricRegistry;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.journal.RawMessage;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stub sink replacing the Graylog input in benchmarks, it only counts
+ * the published journal entries, each a batch of messages, and their
+ * bytes. Safe for concurrent fetch threads.
+ */
+public class BenchmarkInput extends MessageInput {
+
+    private final LongAdder payloads = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    public BenchmarkInput() {
+        super(new MetricRegistry(), Configuration.EMPTY_CONFIGURATION, null, new LocalMetricRegistry(),
+                new JRPCodec(Configuration.EMPTY_CONFIGURATION),
+                new MessageInput.Config(new JRPInputTransport.Config(), new JRPCodec.Config()) {},
+                new JRPInput.Descriptor(), null);
+    }
+
+    @Override
+    public void processRawMessage(RawMessage rawMessage) {
+        payloads.increment();
+        bytes.add(rawMessage.getPayload().length);
+    }
+
+    @Override
+    public String getId() {
+        return "benchmark";
+    }
+
+    public long getPayloads() {
+        return payloads.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+}
@@ -0,0 +1,106 @@
+package de.shoptimax;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+import de.shoptimax.util.RecordBatch;
+import org.graylog2.inputs.codecs.GelfCodec;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input side cost per message: encoding in the transport plus decoding in
+ * the codec, GELF JSON against record batches of the given size. Run with
+ * "-prof gc" to see the allocation rate per message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    private static final int MESSAGES = 100;
+
+    @Param({"1", "100"})
+    public int batchRecords;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Map<String, Object>> records = new ArrayList<>();
+    private GelfCodec gelfCodec;
+    private JRPCodec jrpCodec;
+    private RecordBatch batch;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < MESSAGES; i++) {
+            // the fields of a status snapshot like the one in the README
+            Map<String, Object> record = Maps.newHashMap();
+            record.put("_jrp_input_url", "http://localhost/status");
+            record.put("_label", "bench");
+            record.put("host", "localhost");
+            record.put("short_message", "MySQL Status");
+            record.put("_jrp_input_status", 200);
+            record.put("_jrp_input_responseTime", 12L);
+            for (int j = 0; j < 50; j++) {
+                record.put("_Counter_" + j, i * 1000L + j * 7919L);
+            }
+            records.add(record);
+        }
+        gelfCodec = new GelfCodec(Configuration.EMPTY_CONFIGURATION, null);
+        jrpCodec = new JRPCodec(Configuration.EMPTY_CONFIGURATION);
+        batch = new RecordBatch(8192);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void gelf(Blackhole blackhole) throws IOException {
+        for (Map<String, Object> record : records) {
+            blackhole.consume(gelfCodec.decode(new RawMessage(mapper.writeValueAsBytes(record))));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void jrp(Blackhole blackhole) {
+        for (Map<String, Object> record : records) {
+            for (Map.Entry<String, Object> field : record.entrySet()) {
+                batch.field(field.getKey(), field.getValue());
+            }
+            batch.endRecord();
+            if (batch.getRecords() >= batchRecords) {
+                decode(blackhole);
+            }
+        }
+        decode(blackhole);
+    }
+
+    private void decode(Blackhole blackhole) {
+        if (batch.getRecords() > 0) {
+            for (Message message : jrpCodec.decodeMessages(new RawMessage(batch.toByteArray()))) {
+                blackhole.consume(message);
+            }
+        }
+        batch.reset();
+    }
+}
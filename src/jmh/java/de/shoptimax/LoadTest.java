@@ -0,0 +1,138 @@
+package de.shoptimax;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.google.common.eventbus.EventBus;
+import okhttp3.OkHttpClient;
+import org.graylog2.plugin.configuration.Configuration;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a {@link JRPInputTransport} polling thousands of virtual endpoints
+ * of a {@link MockEndpointFarm} into a stub input and reports the achieved
+ * polls per second, the scheduler lag percentiles, the heap and the number
+ * of threads. Options are given as key=value arguments, see {@link #main}.
+ * Run with:
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:java -Dexec.mainClass=de.shoptimax.LoadTest -Dexec.args="endpoints=5000 interval=10"
+ * </pre>
+ */
+public class LoadTest {
+
+    private final Map<String, String> options;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    /**
+     * @param args Options, all optional: endpoints (2000), servers (4), interval in s (10), duration in s (60),
+     *             report interval in s (10), latency in ms as min-max (20-200), failureRate (0.01),
+     *             shape FLAT or NESTED (FLAT), size of the payload in bytes (2048), mode POOLED, ASYNC or VIRTUAL
+     *             (POOLED, VIRTUAL needs Java 21), poolSize (64), maxInFlight (256), maxInFlightPerHost (256),
+     *             passThrough (false), dnsCacheTtl (0, no cache), maxIdleConnections (0, the shared pool)
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(option[0], option[1]);
+        }
+        new LoadTest(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        int endpoints = intOption("endpoints", 2000);
+        int interval = intOption("interval", 10);
+        long durationMs = TimeUnit.SECONDS.toMillis(intOption("duration", 60));
+        long reportMs = TimeUnit.SECONDS.toMillis(intOption("report", 10));
+        String[] latency = option("latency", "20-200").split("-");
+        long minLatencyMs = Long.parseLong(latency[0]);
+        long maxLatencyMs = latency.length > 1 ? Long.parseLong(latency[1]) : minLatencyMs;
+        byte[] payload = Payloads.create(Payloads.Shape.valueOf(option("shape", "FLAT")), intOption("size", 2048));
+
+        try (MockEndpointFarm farm = new MockEndpointFarm(intOption("servers", 4), payload, minLatencyMs, maxLatencyMs,
+                Double.parseDouble(option("failureRate", "0.01")))) {
+            StringBuilder targets = new StringBuilder();
+            for (int i = 0; i < endpoints; i++) {
+                targets.append("endpoint").append(i).append('|').append(farm.url(i)).append('\n');
+            }
+            Map<String, Object> config = new HashMap<>();
+            config.put("configTargets", targets.toString());
+            config.put("configInterval", interval);
+            config.put("configIntervalUnit", TimeUnit.SECONDS.name());
+            config.put("configTimeout", 30);
+            config.put("configTimeoutUnit", TimeUnit.SECONDS.name());
+            config.put("configExecutionMode", option("mode", PollScheduler.ExecutionMode.POOLED.name()));
+            config.put("configFetchPoolSize", intOption("poolSize", 64));
+            config.put("configMaxInFlight", intOption("maxInFlight", 256));
+            config.put("configMaxInFlightPerHost", intOption("maxInFlightPerHost", 256));
+            config.put("configPassThrough", Boolean.parseBoolean(option("passThrough", "false")));
+            config.put("configDnsCacheTtl", intOption("dnsCacheTtl", 0));
+            config.put("configMaxIdleConnections", intOption("maxIdleConnections", 0));
+
+            BenchmarkInput input = new BenchmarkInput();
+            JRPInputTransport transport = new JRPInputTransport(new Configuration(config), new EventBus(),
+                    new MetricRegistry(), null, null, null, null, null, new FetchRegistry(), new CachingDns(), new OkHttpClient());
+            MetricRegistry metrics = (MetricRegistry) transport.getMetricSet();
+            System.out.printf(Locale.ENGLISH, "%d endpoints every %d s, expecting %.1f polls/s, options %s%n",
+                    endpoints, interval, endpoints / (double) interval, options);
+            transport.launch(input);
+
+            long start = System.currentTimeMillis();
+            long lastReport = start, lastPolls = 0, lastMessages = 0;
+            Meter messages = metrics.getMeters().get("messagesPublished");
+            while (System.currentTimeMillis() - start < durationMs) {
+                Thread.sleep(Math.min(reportMs, durationMs - (System.currentTimeMillis() - start)));
+                long now = System.currentTimeMillis();
+                long polls = metrics.getTimers().get("requestLatency").getCount();
+                report(metrics, (polls - lastPolls) * 1000.0 / (now - lastReport),
+                        (messages.getCount() - lastMessages) * 1000.0 / (now - lastReport));
+                lastReport = now;
+                lastPolls = polls;
+                lastMessages = messages.getCount();
+            }
+            transport.stop();
+            long polls = metrics.getTimers().get("requestLatency").getCount();
+            System.out.printf(Locale.ENGLISH, "total: %d polls, %.1f polls/s, %d messages in %d journal entries, %d requests served, %d failed%n",
+                    polls, polls * 1000.0 / (System.currentTimeMillis() - start), messages.getCount(), input.getPayloads(),
+                    farm.getRequests(), farm.getFailures());
+        }
+    }
+
+    private void report(MetricRegistry metrics, double pollsPerSecond, double messagesPerSecond) {
+        Snapshot lag = metrics.getHistograms().get("schedulerLag").getSnapshot();
+        long heapMb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024);
+        int threads = 0, inputThreads = 0;
+        for (ThreadInfo thread : ManagementFactory.getThreadMXBean().dumpAllThreads(false, false)) {
+            threads++;
+            // the mock servers run one thread per connection
+            if (!thread.getThreadName().startsWith("MockWebServer") && !thread.getThreadName().startsWith("mock-farm")) {
+                inputThreads++;
+            }
+        }
+        System.out.printf(Locale.ENGLISH,
+                "%.1f polls/s, %.1f messages/s, scheduler lag p50 %.0f p95 %.0f p99 %.0f max %d ms, heap %d MB, threads %d (input %d)%n",
+                pollsPerSecond, messagesPerSecond, lag.getMedian(), lag.get95thPercentile(), lag.get99thPercentile(),
+                lag.getMax(), heapMb, threads, inputThreads);
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(option(name, String.valueOf(defaultValue)));
+    }
+}
@@ -0,0 +1,104 @@
+package de.shoptimax;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A few local MockWebServers serving any number of virtual endpoints
+ * "/endpoint/&lt;n&gt;", which answer with the same payload after a random
+ * latency and fail at a given rate, half of the failures with a 503 and half
+ * by dropping the connection.
+ */
+public class MockEndpointFarm implements AutoCloseable {
+
+    private final List<MockWebServer> servers = new ArrayList<>();
+    private final List<Thread> drainers = new ArrayList<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param servers Number of servers the endpoints are spread over
+     * @param payload The body of every successful response
+     * @param minLatencyMs Minimum time until the response headers are sent
+     * @param maxLatencyMs Maximum time until the response headers are sent
+     * @param failureRate Share of failed requests, from 0 to 1
+     */
+    public MockEndpointFarm(int servers, byte[] payload, long minLatencyMs, long maxLatencyMs,
+                            double failureRate) throws IOException {
+        Dispatcher dispatcher = new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                requests.increment();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long latencyMs = maxLatencyMs > minLatencyMs ? random.nextLong(minLatencyMs, maxLatencyMs + 1) : minLatencyMs;
+                if (random.nextDouble() < failureRate) {
+                    failures.increment();
+                    return random.nextBoolean()
+                            ? new MockResponse().setResponseCode(503).setHeadersDelay(latencyMs, TimeUnit.MILLISECONDS)
+                                    .setHeader("Content-Type", "application/json").setBody("{\"error\":\"unavailable\"}")
+                            : new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+                }
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setHeadersDelay(latencyMs, TimeUnit.MILLISECONDS)
+                        .setBody(new Buffer().write(payload));
+            }
+        };
+        for (int i = 0; i < servers; i++) {
+            MockWebServer server = new MockWebServer();
+            server.setDispatcher(dispatcher);
+            server.start();
+            this.servers.add(server);
+            // the server keeps every request until it is taken, which would fill the heap
+            Thread drainer = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        server.takeRequest();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "mock-farm-drainer-" + i);
+            drainer.setDaemon(true);
+            drainer.start();
+            drainers.add(drainer);
+        }
+    }
+
+    /**
+     * @return The URL of a virtual endpoint, endpoints are spread evenly over the servers
+     */
+    public HttpUrl url(int endpoint) {
+        return servers.get(endpoint % servers.size()).url("/endpoint/" + endpoint);
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Thread drainer : drainers) {
+            drainer.interrupt();
+        }
+        for (MockWebServer server : servers) {
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package de.shoptimax;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Maps;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baseline of the poll, parse and publish path: feeds a recorded body of
+ * the given size and shape through {@link MonitorTask#readBody} into a stub
+ * input. Run with "-prof gc" to get the allocations per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class MonitorTaskBenchmark {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    @Param({"1024", "102400", "10485760"})
+    public int size;
+
+    @Param({"FLAT", "NESTED"})
+    public Payloads.Shape shape;
+
+    @Param({"false", "true"})
+    public boolean passThrough;
+
+    private byte[] payload;
+    private MonitorTask task;
+
+    @Setup
+    public void setup() throws IOException {
+        JRPInputConfig config = new JRPInputConfig();
+        config.setPassThrough(passThrough);
+        PollTarget target = new PollTarget("bench", "http://localhost/status", 1, TimeUnit.MINUTES);
+        task = new MonitorTask(target, config, new BenchmarkInput(), null, new JRPMetrics(new MetricRegistry()), null);
+        payload = Payloads.create(shape, size);
+    }
+
+    @Benchmark
+    public void readBody() throws IOException {
+        Map<String, Object> eventdata = Maps.newHashMap();
+        eventdata.put("_jrp_input_url", "http://localhost/status");
+        eventdata.put("_label", "bench");
+        eventdata.put("host", "localhost");
+        eventdata.put("_jrp_input_status", 200);
+        task.readBody(eventdata, ResponseBody.create(JSON, payload));
+    }
+}
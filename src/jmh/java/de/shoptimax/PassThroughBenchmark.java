@@ -0,0 +1,86 @@
+package de.shoptimax;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Maps;
+import de.shoptimax.util.JsonRootPath;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Map round-trip with the pass-through copy of the response
+ * body. Run with "-prof gc" to see the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PassThroughBenchmark {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    @Param({"false", "true"})
+    public boolean passThrough;
+
+    @Param({"", "$.events[*]"})
+    public String rootPath;
+
+    private byte[] payload;
+    private MonitorTask task;
+
+    @Setup
+    public void setup() {
+        JRPInputConfig config = new JRPInputConfig();
+        config.setPassThrough(passThrough);
+        if (!rootPath.isEmpty()) {
+            config.setRootPath(JsonRootPath.compile(rootPath));
+        }
+        PollTarget target = new PollTarget("bench", "http://localhost/status", 1, TimeUnit.MINUTES);
+        task = new MonitorTask(target, config, new BenchmarkInput(), null, new JRPMetrics(new MetricRegistry()), null);
+        payload = (rootPath.isEmpty() ? statusObject(0) : eventList(100)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void readBody() throws IOException {
+        Map<String, Object> eventdata = Maps.newHashMap();
+        eventdata.put("_jrp_input_url", "http://localhost/status");
+        eventdata.put("_label", "bench");
+        eventdata.put("host", "localhost");
+        eventdata.put("_jrp_input_status", 200);
+        task.readBody(eventdata, ResponseBody.create(JSON, payload));
+    }
+
+    // a status snapshot like the one in the README
+    private static String statusObject(int seed) {
+        StringBuilder json = new StringBuilder("{\"version\":\"1.1\",\"host\":\"db\",\"short_message\":\"MySQL Status\"");
+        for (int i = 0; i < 50; i++) {
+            json.append(",\"_Counter_").append(i).append("\":").append(seed * 1000L + i * 7919L);
+        }
+        return json.append('}').toString();
+    }
+
+    private static String eventList(int events) {
+        StringBuilder json = new StringBuilder("{\"events\":[");
+        for (int i = 0; i < events; i++) {
+            json.append(i == 0 ? "" : ",").append(statusObject(i));
+        }
+        return json.append("]}").toString();
+    }
+}
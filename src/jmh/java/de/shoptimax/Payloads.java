@@ -0,0 +1,77 @@
+package de.shoptimax;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Builds benchmark payloads of a given size from the recorded responses in
+ * src/jmh/resources/payloads, so large bodies keep the shape of real ones
+ * without being checked in.
+ */
+public final class Payloads {
+
+    /**
+     * Shape of a payload
+     */
+    public enum Shape {
+        // one object of numeric counters, see mysql-status.json
+        FLAT,
+        // one object with an array of nested documents, see order-event.json
+        NESTED
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Payloads() {
+    }
+
+    /**
+     * @param shape The shape of the payload
+     * @param size The minimum size of the payload in bytes
+     * @return A JSON object of at least the given size
+     */
+    public static byte[] create(Shape shape, int size) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 4096);
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("version", "1.1");
+            generator.writeStringField("host", "benchmark");
+            generator.writeStringField("short_message", "JRP benchmark payload");
+            if (shape == Shape.FLAT) {
+                JsonNode sample = load("mysql-status.json");
+                for (int copy = 0; out.size() < size; copy++) {
+                    Iterator<Map.Entry<String, JsonNode>> fields = sample.fields();
+                    while (fields.hasNext() && out.size() < size) {
+                        Map.Entry<String, JsonNode> field = fields.next();
+                        generator.writeFieldName(copy == 0 ? field.getKey() : field.getKey() + "_" + copy);
+                        generator.writeTree(field.getValue());
+                        generator.flush();
+                    }
+                }
+            } else {
+                JsonNode sample = load("order-event.json");
+                generator.writeArrayFieldStart("_records");
+                while (out.size() < size) {
+                    generator.writeTree(sample);
+                    generator.flush();
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private static JsonNode load(String name) throws IOException {
+        try (InputStream in = Payloads.class.getResourceAsStream("/payloads/" + name)) {
+            return MAPPER.readTree(in);
+        }
+    }
+}
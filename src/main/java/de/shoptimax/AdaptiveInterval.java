@@ -0,0 +1,73 @@
+package de.shoptimax;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Polling interval of one target which adapts to its responses: it is
+ * halved down to the minimum while responses keep changing, returns to the
+ * configured interval when they do not, and backs off exponentially with
+ * jitter up to the maximum after failures.
+ */
+public class AdaptiveInterval {
+
+    /**
+     * How a poll turned out
+     */
+    public enum Outcome {
+        // new data was published
+        CHANGED,
+        // nothing new, or the change could not be detected
+        UNCHANGED,
+        // 997/998/999 failure or 429/503 response
+        FAILED
+    }
+
+    private final long baseMs, minMs, maxMs;
+    private long currentMs;
+    private int failures;
+
+    /**
+     * @param baseMs The configured interval in ms
+     * @param minMs The lower bound in ms, raised to the base if above it
+     * @param maxMs The upper bound in ms, lowered to the base if below it
+     */
+    public AdaptiveInterval(long baseMs, long minMs, long maxMs) {
+        this.baseMs = baseMs;
+        this.minMs = Math.max(1, Math.min(minMs, baseMs));
+        this.maxMs = Math.max(maxMs, baseMs);
+        this.currentMs = baseMs;
+    }
+
+    /**
+     * Adapt the interval to the outcome of a poll
+     * @param outcome The outcome
+     * @param retryAfterMs Delay requested by the server with Retry-After in ms, 0 if none
+     * @return The delay until the next poll in ms
+     */
+    public synchronized long update(Outcome outcome, long retryAfterMs) {
+        switch (outcome) {
+            case FAILED:
+                failures = Math.min(failures + 1, 30);
+                long backoff = Math.min(maxMs, baseMs << Math.min(failures, 20));
+                // equal jitter, so failing targets do not retry in lockstep
+                currentMs = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                return Math.max(currentMs, retryAfterMs);
+            case CHANGED:
+                failures = 0;
+                currentMs = Math.max(minMs, Math.min(currentMs, baseMs) / 2);
+                return currentMs;
+            default:
+                failures = 0;
+                currentMs = currentMs < baseMs ? Math.min(baseMs, currentMs * 2) : baseMs;
+                return currentMs;
+        }
+    }
+
+    public synchronized long getCurrentMs() {
+        return currentMs;
+    }
+
+    public long getMinMs() {
+        return minMs;
+    }
+}
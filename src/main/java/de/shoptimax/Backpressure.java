@@ -0,0 +1,70 @@
+package de.shoptimax;
+
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.lifecycles.Lifecycle;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decides whether polling has to pause because Graylog cannot keep up:
+ * the journal is throttled, message processing is paused or throttled,
+ * or the input publishes more messages per second than allowed. Only
+ * used by the timer thread.
+ */
+public class Backpressure {
+
+    // the publish rate is sampled over windows of this length
+    private static final long RATE_WINDOW_MS = 1000;
+
+    private final BooleanSupplier journalThrottled;
+    private final ServerStatus serverStatus;
+    private final JRPMetrics metrics;
+    private final int maxMessagesPerSecond;
+
+    private long windowStart, windowCount;
+    private double rate;
+
+    /**
+     * @param journalThrottled Tells whether the input is throttled because of the journal
+     * @param serverStatus The status of the node, may be null
+     * @param metrics The metrics counting the published messages
+     * @param maxMessagesPerSecond Publish rate above which polling pauses, 0 for no limit
+     */
+    public Backpressure(BooleanSupplier journalThrottled, ServerStatus serverStatus, JRPMetrics metrics,
+                        int maxMessagesPerSecond) {
+        this.journalThrottled = journalThrottled;
+        this.serverStatus = serverStatus;
+        this.metrics = metrics;
+        this.maxMessagesPerSecond = maxMessagesPerSecond;
+    }
+
+    /**
+     * @param now The current time in ms
+     * @return true if polls should be deferred
+     */
+    public boolean isSaturated(long now) {
+        if (journalThrottled.getAsBoolean()) {
+            return true;
+        }
+        if (serverStatus != null && (!serverStatus.isProcessing() || serverStatus.getLifecycle() == Lifecycle.THROTTLED)) {
+            return true;
+        }
+        return maxMessagesPerSecond > 0 && publishRate(now) > maxMessagesPerSecond;
+    }
+
+    /**
+     * @return Messages per second published in the last complete window
+     */
+    private double publishRate(long now) {
+        long count = metrics.getPublishedCount();
+        if (windowStart == 0) {
+            windowStart = now;
+            windowCount = count;
+        } else if (now - windowStart >= RATE_WINDOW_MS) {
+            rate = (count - windowCount) * 1000.0 / (now - windowStart);
+            windowStart = now;
+            windowCount = count;
+        }
+        return rate;
+    }
+}
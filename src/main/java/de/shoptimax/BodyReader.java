@@ -0,0 +1,681 @@
+package de.shoptimax;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingInputStream;
+import de.shoptimax.util.FieldProjection;
+import de.shoptimax.util.HashingSource;
+import de.shoptimax.util.JsonRootPath;
+import de.shoptimax.util.LimitedSource;
+import de.shoptimax.util.RecordBatch;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.journal.RawMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the response bodies of a target into messages and hands them to
+ * the journal in record batches. Used by the {@link MonitorTask} of the
+ * target, which is never polled concurrently, so it is not thread safe.
+ */
+class BodyReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BodyReader.class.getName());
+
+    private final PollTarget target;
+    private final JRPInputConfig config;
+    private final MessageInput messageInput;
+    private final JRPMetrics metrics;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // messages published from the current body
+    private int published;
+    // highest watermark of the current poll
+    private String watermark;
+    // next page link found in the current body
+    private String nextPage;
+    // phase timings of the current request, null unless enabled
+    private CallTimings callTimings;
+    // reused for nested pass-through values
+    private final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream(8192);
+    // messages not yet handed to the journal
+    private final RecordBatch batch = new RecordBatch(8192);
+    // complete batches held back until it is known whether the body changed, null if not holding
+    private List<byte[]> heldBatches;
+
+    BodyReader(PollTarget target, JRPInputConfig config, MessageInput messageInput, JRPMetrics metrics) {
+        this.target = target;
+        this.config = config;
+        this.messageInput = messageInput;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The highest watermark seen since {@link #setWatermark(String)}
+     */
+    String getWatermark() {
+        return watermark;
+    }
+
+    void setWatermark(String watermark) {
+        this.watermark = watermark;
+    }
+
+    /**
+     * @return The next page link found by the next page path in the last body, or null
+     */
+    String getNextPage() {
+        return nextPage;
+    }
+
+    /**
+     * Turn the response body into messages and publish them
+     * @param eventdata The request fields added to every message
+     * @param body The response body
+     * @param page The page of the poll, starting at 0
+     * @param callTimings The phase timings of the request, may be null
+     * @return true if the body changed since the last poll, as far as the options tell
+     * @throws IOException if the body could not be read or parsed
+     */
+    boolean read(Map<String, Object> eventdata, ResponseBody body, int page, CallTimings callTimings) throws IOException {
+        long parseStart = System.nanoTime();
+        published = 0;
+        nextPage = null;
+        this.callTimings = callTimings;
+        if (config.getMaxBodySize() > 0 && !config.isTail()) {
+            // a tail never ends, its lines are limited instead
+            if (body.contentLength() > config.getMaxBodySize()) {
+                throw new LimitedSource.BodyTooLargeException(config.getMaxBodySize());
+            }
+            body = ResponseBody.create(body.contentType(), body.contentLength(),
+                    Okio.buffer(new LimitedSource(body.source(), config.getMaxBodySize())));
+        }
+        boolean suppressUnchanged = config.isSuppressUnchanged() && page == 0 && !config.isTail();
+        HashingSource hashingSource = null;
+        if (suppressUnchanged || (page == 0 && detectsChangeByHash())) {
+            hashingSource = new HashingSource(body.source());
+            body = ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(hashingSource));
+        }
+        Map<String, Object> requestFields = null;
+        if (suppressUnchanged) {
+            // the messages are held back in the batch until the hash of the whole body is known
+            requestFields = Maps.newHashMap(eventdata);
+            holdBatches();
+        }
+        long bytes;
+        Long bodyHash = null;
+        boolean unchanged = false;
+        try {
+            if (config.isNdjson()) {
+                bytes = readLines(eventdata, body);
+            } else {
+                bytes = config.getRootPath() != null || config.isPassThrough()
+                        ? readElements(eventdata, body)
+                        : readObject(eventdata, body);
+            }
+            if (hashingSource != null) {
+                body.close();
+                bodyHash = hashingSource.hash();
+                unchanged = target.isBodyUnchanged(bodyHash);
+            }
+        } finally {
+            if (suppressUnchanged) {
+                releaseBatches(!unchanged);
+            }
+        }
+        if (suppressUnchanged && unchanged) {
+            LOGGER.debug("Body of URL {} unchanged", target.getUrl());
+            published = 0;
+            publishUnchanged(requestFields);
+        }
+        if (bodyHash != null) {
+            // only remembered once the body has been published
+            target.setBodyHash(bodyHash);
+        }
+        if (config.isNdjson()) {
+            metrics.bodyRead(target.getMetrics(), bytes, published, config.isTail() ? -1 : System.nanoTime() - parseStart);
+        } else {
+            metrics.body(target.getMetrics(), bytes, published, System.nanoTime() - parseStart);
+        }
+        return hashingSource != null ? !unchanged
+                : target.getDedupCache() != null ? published > 0 : config.isConditionalGet();
+    }
+
+    /**
+     * Record a response which was not modified since the last poll
+     * @param eventdata The request fields of the heartbeat message
+     */
+    void notModified(Map<String, Object> eventdata) throws IOException {
+        published = 0;
+        publishUnchanged(eventdata);
+        metrics.body(target.getMetrics(), 0, published, 0);
+    }
+
+    /**
+     * @return true if the adaptive interval needs to know whether the body
+     *         changed and no other option tells, so the body is hashed
+     */
+    private boolean detectsChangeByHash() {
+        return target.getAdaptiveInterval() != null && !config.isTail()
+                && target.getDedupCache() == null && !config.isConditionalGet() && !config.isSuppressUnchanged()
+                && config.getWatermarkField() == null;
+    }
+
+    /**
+     * Publish a heartbeat without the body, if configured, for a response
+     * which did not change since the last poll
+     */
+    private void publishUnchanged(Map<String, Object> eventdata) throws IOException {
+        if (config.isUnchangedHeartbeat()) {
+            eventdata.put("short_message", "Unchanged");
+            eventdata.put("_jrp_input_unchanged", true);
+            eventdata.put("_jrp_input_responseSize", 0);
+            publish(eventdata);
+        }
+    }
+
+    /**
+     * Parse the response body as a single object and publish it
+     * @return The number of bytes read
+     */
+    private long readObject(Map<String, Object> eventdata, ResponseBody body) throws IOException {
+        byte[] responseBody = body.bytes();
+        eventdata.put("_jrp_input_responseSize", responseBody.length);
+        // only a body read before the message is published has a known transfer time
+        if (callTimings != null) {
+            MonitorTask.putMillis(eventdata, "_jrp_input_bodyTime", callTimings.getBodyNs());
+        }
+        if (config.isLogResponseBody()) {
+            eventdata.put("full_message", fullMessage(responseBody, 0, responseBody.length));
+        }
+
+        // get JSON from response body and fill eventdata!
+        Map<String, Object> map;
+        if (config.getProjection() != null) {
+            try (JsonParser parser = mapper.getFactory().createParser(responseBody)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Response body is not a JSON object");
+                }
+                map = projectObject(parser);
+            }
+        } else {
+            map = mapper.readValue(responseBody, new TypeReference<Map<String,Object>>(){});
+        }
+        if (config.getWatermarkField() != null) {
+            updateWatermark(map.get(config.getWatermarkField()));
+        }
+        if (isDuplicate(map)) {
+            return responseBody.length;
+        }
+        putFields(eventdata, map, null);
+        publish(eventdata);
+        return responseBody.length;
+    }
+
+    /**
+     * Put the fields of an element into the message, together with the
+     * rates of its counters
+     */
+    private void putFields(Map<String, Object> message, Map<?, ?> element, Integer elementIndex) {
+        CounterRates rates = target.getCounterRates();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<?, ?> entry : element.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            if (rates != null && value instanceof Number && rates.isTracked(key)) {
+                double rate = rates.update(key, elementIndex != null ? elementIndex : -1,
+                        ((Number) value).doubleValue(), now);
+                if (!Double.isNaN(rate)) {
+                    message.put(key + "_rate", rate);
+                }
+                if (rates.isDropUnchanged() && rates.isUnchanged()) {
+                    continue;
+                }
+            }
+            LOGGER.debug("Storing field <{}> with value <{}>.", key, value);
+            message.put(key, value);
+        }
+    }
+
+    /**
+     * Stream the response body and publish every element matched by the
+     * root path as its own message, so only one element is held in memory
+     * at a time. Without a root path the whole body is one element.
+     * @return The number of bytes read
+     */
+    private long readElements(Map<String, Object> eventdata, ResponseBody body) throws IOException {
+        final JsonRootPath rootPath = config.getRootPath() != null ? config.getRootPath() : JsonRootPath.DOCUMENT;
+        // pass-through only keeps the raw body if it has to be logged
+        final byte[] rawBody = config.isPassThrough() && config.isLogResponseBody() ? body.bytes() : null;
+        final CountingInputStream bodyStream = rawBody != null ? null : new CountingInputStream(body.byteStream());
+        final int[] index = {0};
+        try (JsonParser parser = rawBody != null
+                ? mapper.getFactory().createParser(rawBody)
+                : mapper.getFactory().createParser(bodyStream)) {
+            int elements = rootPath.extract(parser, p -> {
+                Integer elementIndex = config.getRootPath() != null ? index[0]++ : null;
+                if (config.isPassThrough()) {
+                    publishCopy(p, eventdata, elementIndex, rawBody);
+                } else {
+                    publishElement(p, eventdata, elementIndex);
+                }
+            }, config.getNextPagePath(), p -> {
+                nextPage = p.getCurrentToken().isScalarValue() ? p.getValueAsString() : null;
+                p.skipChildren();
+            });
+            LOGGER.debug("Published {} elements matching {} for URL {}", elements, rootPath, target.getUrl());
+        }
+        return rawBody != null ? rawBody.length : bodyStream.getCount();
+    }
+
+    /**
+     * Read newline-delimited JSON from the stream and publish every line,
+     * or every element of a line matched by the root path, while the rest
+     * is still downloading. At most one line is buffered, longer lines are
+     * skipped. Whenever the next line has not arrived yet, the batched
+     * messages are handed to the journal, so a slow stream is not held back.
+     * @return The number of bytes read
+     */
+    private long readLines(Map<String, Object> eventdata, ResponseBody body) throws IOException {
+        final JsonRootPath rootPath = config.getRootPath() != null ? config.getRootPath() : JsonRootPath.DOCUMENT;
+        final long maxLineLength = Math.max(1, config.getMaxLineLength());
+        final int[] index = {0};
+        BufferedSource source = body.source();
+        long bytes = 0, reportedBytes = 0;
+        int lines = 0, reportedMessages = 0;
+        // blocks until the next byte arrived or the stream ended
+        while (source.request(1)) {
+            long newline = source.indexOf((byte) '\n', 0, maxLineLength);
+            if (newline < 0 && source.buffer().size() >= maxLineLength) {
+                long skipped = skipLine(source);
+                bytes += skipped;
+                LOGGER.warn("Skipped line of {} bytes longer than {} bytes from URL {}", skipped, maxLineLength, target.getUrl());
+                continue;
+            }
+            byte[] line = newline < 0 ? source.readByteArray() : source.readByteArray(newline + 1);
+            bytes += line.length;
+            lines++;
+            final byte[] rawLine = config.isPassThrough() && config.isLogResponseBody() ? line : null;
+            try (JsonParser parser = mapper.getFactory().createParser(line)) {
+                // blank lines have no elements
+                rootPath.extract(parser, p -> {
+                    Integer elementIndex = index[0]++;
+                    if (config.isPassThrough()) {
+                        publishCopy(p, eventdata, elementIndex, rawLine);
+                    } else {
+                        publishElement(p, eventdata, elementIndex);
+                    }
+                });
+            } catch (JsonProcessingException e) {
+                // one broken line must not end the stream
+                LOGGER.warn("Skipped invalid line {} from URL {}: {}", lines, target.getUrl(), e.getOriginalMessage());
+            }
+            if (source.buffer().indexOf((byte) '\n') < 0) {
+                // the next line has not arrived yet
+                flush();
+                metrics.streamed(bytes - reportedBytes, published - reportedMessages);
+                reportedBytes = bytes;
+                reportedMessages = published;
+            }
+        }
+        metrics.streamed(bytes - reportedBytes, published - reportedMessages);
+        LOGGER.debug("Published {} messages from {} lines for URL {}", published, lines, target.getUrl());
+        return bytes;
+    }
+
+    /**
+     * Skip the rest of an overlong line without buffering it
+     * @return The number of bytes skipped
+     */
+    private static long skipLine(BufferedSource source) throws IOException {
+        long skipped = 0;
+        while (source.request(1)) {
+            long newline = source.buffer().indexOf((byte) '\n');
+            if (newline >= 0) {
+                source.skip(newline + 1);
+                return skipped + newline + 1;
+            }
+            long buffered = source.buffer().size();
+            source.skip(buffered);
+            skipped += buffered;
+        }
+        return skipped;
+    }
+
+    private void publishElement(JsonParser parser, Map<String, Object> eventdata, Integer elementIndex) throws IOException {
+        long startOffset = parser.getTokenLocation().getByteOffset();
+        Object element = config.getProjection() != null && parser.getCurrentToken() == JsonToken.START_OBJECT
+                ? projectObject(parser)
+                : mapper.readValue(parser, Object.class);
+        if (element instanceof Map && config.getWatermarkField() != null) {
+            updateWatermark(((Map<?, ?>) element).get(config.getWatermarkField()));
+        }
+        if (isDuplicate(element)) {
+            return;
+        }
+        Map<String, Object> message = Maps.newHashMap(eventdata);
+        if (elementIndex != null) {
+            message.put("_jrp_input_elementIndex", elementIndex);
+        }
+        message.put("_jrp_input_responseSize", parser.getCurrentLocation().getByteOffset() - startOffset);
+        if (config.isLogResponseBody()) {
+            byte[] json = mapper.writeValueAsBytes(element);
+            message.put("full_message", fullMessage(json, 0, json.length));
+        }
+        if (element instanceof Map) {
+            putFields(message, (Map<?, ?>) element, elementIndex);
+        } else {
+            message.put("short_message", String.valueOf(element));
+        }
+        publish(message);
+    }
+
+    /**
+     * Read the fields of the object the parser is positioned on which are
+     * kept by the projection, skipping the others
+     */
+    private Map<String, Object> projectObject(JsonParser parser) throws IOException {
+        Map<String, Object> element = new LinkedHashMap<>();
+        config.getProjection().project(parser, (name, p) -> element.put(name, mapper.readValue(p, Object.class)));
+        return element;
+    }
+
+    /**
+     * Pass-through: copy the tokens of the element straight from the parser
+     * into the batch, behind the request fields. The element is never
+     * materialized as a Map.
+     */
+    private void publishCopy(JsonParser parser, Map<String, Object> eventdata, Integer elementIndex, byte[] rawBody) throws IOException {
+        long startOffset = parser.getTokenLocation().getByteOffset();
+        Hasher fingerprint = newFingerprint();
+        final int[] fingerprintFields = {0};
+        final CounterRates rates = target.getCounterRates();
+        final long now = System.currentTimeMillis();
+        try {
+            for (Map.Entry<String, Object> entry : eventdata.entrySet()) {
+                addField(entry.getKey(), entry.getValue());
+            }
+            if (elementIndex != null) {
+                batch.longField("_jrp_input_elementIndex", elementIndex);
+            }
+            if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                // fields of the element win over request fields of the same name, like in the Map path
+                FieldProjection projection = config.getProjection() != null ? config.getProjection() : FieldProjection.NONE;
+                projection.project(parser, (name, p) -> {
+                    if (rates != null && p.getCurrentToken().isNumeric() && rates.isTracked(name)
+                            && !copyCounter(rates, name, elementIndex, p, now)) {
+                        // unchanged and left out, but still part of the record's identity
+                        if (fingerprintField(fingerprint, name, p.getText())) {
+                            fingerprintFields[0]++;
+                        }
+                        return;
+                    }
+                    String value = copyValue(name, p);
+                    if (fingerprintField(fingerprint, name, value)) {
+                        fingerprintFields[0]++;
+                    }
+                    // after copying a scalar field the parser is positioned on its value
+                    if (name.equals(config.getWatermarkField()) && p.getCurrentToken().isScalarValue()) {
+                        updateWatermark(p.getValueAsString());
+                    }
+                });
+            } else {
+                String value = String.valueOf(mapper.readValue(parser, Object.class));
+                batch.stringField("short_message", value);
+                if (fingerprint != null && config.getDedupFields() == null) {
+                    hashValue(fingerprint, value);
+                    fingerprintFields[0]++;
+                }
+            }
+            if (isDuplicate(fingerprint, fingerprintFields[0])) {
+                batch.discardRecord();
+                return;
+            }
+            long endOffset = parser.getCurrentLocation().getByteOffset();
+            batch.longField("_jrp_input_responseSize", endOffset - startOffset);
+            if (rawBody != null) {
+                batch.stringField("full_message", fullMessage(rawBody, (int) startOffset, (int) (endOffset - startOffset)));
+            }
+        } catch (IOException | RuntimeException e) {
+            batch.discardRecord();
+            throw e;
+        }
+        endRecord();
+    }
+
+    /**
+     * Record the numeric value the parser is positioned on and copy its rate into the batch
+     * @return false if the value is unchanged and has to be left out
+     */
+    private boolean copyCounter(CounterRates rates, String name, Integer elementIndex, JsonParser parser, long now) throws IOException {
+        double rate = rates.update(name, elementIndex != null ? elementIndex : -1, parser.getDoubleValue(), now);
+        if (!Double.isNaN(rate)) {
+            batch.doubleField(name + "_rate", rate);
+        }
+        return !(rates.isDropUnchanged() && rates.isUnchanged());
+    }
+
+    /**
+     * Copy the value the parser is positioned on, nested objects and arrays as JSON text
+     * @return The value as text
+     */
+    private String copyValue(String name, JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case VALUE_STRING:
+                batch.stringField(name, parser.getText());
+                break;
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    batch.doubleField(name, parser.getDoubleValue());
+                } else {
+                    batch.longField(name, parser.getLongValue());
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                batch.doubleField(name, parser.getDoubleValue());
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                batch.booleanField(name, parser.getBooleanValue());
+                break;
+            case VALUE_NULL:
+                batch.nullField(name);
+                break;
+            default:
+                outputBuffer.reset();
+                try (JsonGenerator generator = mapper.getFactory().createGenerator(outputBuffer)) {
+                    generator.copyCurrentStructure(parser);
+                }
+                String json = outputBuffer.toString(StandardCharsets.UTF_8.name());
+                batch.jsonField(name, json);
+                return json;
+        }
+        return parser.getText();
+    }
+
+    /**
+     * @return A hasher for the fingerprint of a record, null unless deduplication is enabled
+     */
+    private Hasher newFingerprint() {
+        return target.getDedupCache() != null ? Hashing.murmur3_128().newHasher() : null;
+    }
+
+    /**
+     * Add a field to the fingerprint of a record, if it is one of the key fields
+     * @return true if the field was added
+     */
+    private boolean fingerprintField(Hasher fingerprint, String name, Object value) {
+        if (fingerprint == null || (config.getDedupFields() != null && !config.getDedupFields().contains(name))) {
+            return false;
+        }
+        fingerprint.putUnencodedChars(name).putByte((byte) 0);
+        hashValue(fingerprint, value);
+        return true;
+    }
+
+    private static void hashValue(Hasher fingerprint, Object value) {
+        if (value instanceof Map) {
+            fingerprint.putByte((byte) '{');
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                fingerprint.putUnencodedChars(String.valueOf(entry.getKey())).putByte((byte) 0);
+                hashValue(fingerprint, entry.getValue());
+            }
+            fingerprint.putByte((byte) '}');
+        } else if (value instanceof List) {
+            fingerprint.putByte((byte) '[');
+            for (Object item : (List<?>) value) {
+                hashValue(fingerprint, item);
+            }
+            fingerprint.putByte((byte) ']');
+        } else {
+            fingerprint.putUnencodedChars(String.valueOf(value)).putByte((byte) 0);
+        }
+    }
+
+    /**
+     * @param element A parsed record
+     * @return true if the record was published by an earlier poll and has to be dropped
+     */
+    private boolean isDuplicate(Object element) {
+        Hasher fingerprint = newFingerprint();
+        if (fingerprint == null) {
+            return false;
+        }
+        int fields = 0;
+        if (element instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) element).entrySet()) {
+                if (fingerprintField(fingerprint, String.valueOf(entry.getKey()), entry.getValue())) {
+                    fields++;
+                }
+            }
+        } else if (config.getDedupFields() == null) {
+            hashValue(fingerprint, element);
+            fields++;
+        }
+        return isDuplicate(fingerprint, fields);
+    }
+
+    /**
+     * @param fields Number of fields in the fingerprint, records without key fields are never duplicates
+     */
+    private boolean isDuplicate(Hasher fingerprint, int fields) {
+        if (fingerprint == null || fields == 0) {
+            return false;
+        }
+        boolean seen = target.getDedupCache().seen(fingerprint.hash().asLong());
+        metrics.dedup(seen);
+        return seen;
+    }
+
+    /**
+     * @return The logged body, truncated to the maximum full_message size at a character boundary
+     */
+    private String fullMessage(byte[] bytes, int offset, int length) {
+        int max = config.getMaxFullMessageSize();
+        if (max > 0 && length > max) {
+            length = max;
+            // do not cut a UTF-8 sequence in half
+            while (length > 0 && (bytes[offset + length] & 0xC0) == 0x80) {
+                length--;
+            }
+        }
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Add a message to the batch
+     */
+    void publish(Map<String, Object> eventdata) throws IOException {
+        try {
+            for (Map.Entry<String, Object> entry : eventdata.entrySet()) {
+                addField(entry.getKey(), entry.getValue());
+            }
+        } catch (IOException | RuntimeException e) {
+            batch.discardRecord();
+            throw e;
+        }
+        endRecord();
+    }
+
+    private void addField(String key, Object value) throws IOException {
+        if (value instanceof Map || value instanceof Collection) {
+            batch.jsonField(key, mapper.writeValueAsString(value));
+        } else {
+            batch.field(key, value);
+        }
+    }
+
+    private void endRecord() {
+        batch.endRecord();
+        published++;
+        if (batch.getRecords() >= config.getBatchRecords() || batch.size() >= config.getBatchBytes()) {
+            flush();
+        }
+    }
+
+    /**
+     * Hand the batched messages to the journal
+     */
+    void flush() {
+        if (batch.getRecords() > 0) {
+            if (heldBatches != null) {
+                heldBatches.add(batch.toByteArray());
+            } else {
+                //publish to graylog server
+                messageInput.processRawMessage(new RawMessage(batch.toByteArray()));
+            }
+        }
+        batch.reset();
+    }
+
+    /**
+     * Hold back the following messages until {@link #releaseBatches}
+     */
+    private void holdBatches() {
+        flush();
+        heldBatches = new ArrayList<>();
+    }
+
+    /**
+     * @param publish true to hand the held messages to the journal, false to drop them
+     */
+    private void releaseBatches(boolean publish) {
+        List<byte[]> held = heldBatches;
+        heldBatches = null;
+        if (publish) {
+            flush();
+            for (byte[] payload : held) {
+                messageInput.processRawMessage(new RawMessage(payload));
+            }
+        } else {
+            batch.reset();
+        }
+    }
+
+    private void updateWatermark(Object value) {
+        if (value != null && !(value instanceof Map) && !(value instanceof List)) {
+            String watermark = String.valueOf(value);
+            if (this.watermark == null || WatermarkStore.compare(watermark, this.watermark) > 0) {
+                this.watermark = watermark;
+            }
+        }
+    }}
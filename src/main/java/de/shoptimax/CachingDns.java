@@ -0,0 +1,223 @@
+package de.shoptimax;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import okhttp3.Dns;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Node-wide cache of resolved host names, shared by all inputs which enabled
+ * it. An entry is used for its time to live and refreshed in the background
+ * once most of it has passed, so targets polled regularly never wait for the
+ * resolver. If the resolver fails, the last addresses are used for a while
+ * longer. Concurrent lookups of a host missing in the cache wait for one
+ * resolution. The resolver does not expose the TTL of the DNS records, so
+ * every input sets the TTL its lookups accept; an entry refreshed for one
+ * input is fresh for all.
+ */
+@Singleton
+public class CachingDns {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingDns.class.getName());
+
+    public static final long DEFAULT_TTL_MS = 60_000;
+    /**
+     * How long addresses are used after their TTL if the resolver fails
+     */
+    public static final long DEFAULT_MAX_STALE_MS = 600_000;
+    public static final int DEFAULT_MAX_HOSTS = 10_000;
+    // share of the TTL after which a used entry is refreshed in the background
+    private static final double REFRESH_AHEAD = 0.8;
+
+    private static class Entry {
+        private final List<InetAddress> addresses;
+        private final long resolvedAt;
+
+        private Entry(List<InetAddress> addresses, long resolvedAt) {
+            this.addresses = addresses;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+
+    private final Dns resolver;
+    private final long ttlMs;
+    private final long maxStaleMs;
+    private final int maxHosts;
+    private final LongSupplier clock;
+    // longest TTL of any input, entries older than that plus maxStaleMs are of no use
+    private volatile long maxTtlMs;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<List<InetAddress>>> resolving = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor refresher;
+
+    @Inject
+    public CachingDns() {
+        this(Dns.SYSTEM, DEFAULT_TTL_MS, DEFAULT_MAX_STALE_MS, DEFAULT_MAX_HOSTS);
+    }
+
+    /**
+     * @param resolver Resolves the host names missing in the cache
+     * @param ttlMs How long resolved addresses are used
+     * @param maxStaleMs How long addresses are used after their TTL if the resolver fails
+     * @param maxHosts Maximum number of cached host names
+     */
+    public CachingDns(Dns resolver, long ttlMs, long maxStaleMs, int maxHosts) {
+        this(resolver, ttlMs, maxStaleMs, maxHosts, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock The current time in ms
+     */
+    CachingDns(Dns resolver, long ttlMs, long maxStaleMs, int maxHosts, LongSupplier clock) {
+        this.resolver = resolver;
+        this.ttlMs = ttlMs;
+        this.maxTtlMs = ttlMs;
+        this.maxStaleMs = maxStaleMs;
+        this.maxHosts = maxHosts;
+        this.clock = clock;
+        this.refresher = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("jrp-dns-refresh-%d").setDaemon(true).build());
+        refresher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param metrics Counts the cache hits and misses of the input
+     * @param ttlMs How long the input uses resolved addresses, 0 for the default TTL
+     * @return The resolver of an input
+     */
+    public Dns forInput(JRPMetrics metrics, long ttlMs) {
+        long inputTtlMs = ttlMs > 0 ? ttlMs : this.ttlMs;
+        if (inputTtlMs > maxTtlMs) {
+            maxTtlMs = inputTtlMs;
+        }
+        return hostname -> lookup(hostname, inputTtlMs, metrics);
+    }
+
+    /**
+     * @param metrics Counts cache hits and misses, may be null
+     * @return The addresses of the host, from the cache if they are fresh enough
+     * @throws UnknownHostException if the host could not be resolved and no stale addresses are left
+     */
+    public List<InetAddress> lookup(String hostname, JRPMetrics metrics) throws UnknownHostException {
+        return lookup(hostname, ttlMs, metrics);
+    }
+
+    private List<InetAddress> lookup(String hostname, long ttlMs, JRPMetrics metrics) throws UnknownHostException {
+        long now = clock.getAsLong();
+        Entry entry = entries.get(hostname);
+        if (entry != null && now - entry.resolvedAt < ttlMs) {
+            if (metrics != null) {
+                metrics.dnsLookup(true, false);
+            }
+            if (now - entry.resolvedAt >= ttlMs * REFRESH_AHEAD) {
+                refresh(hostname);
+            }
+            return entry.addresses;
+        }
+        try {
+            List<InetAddress> addresses = resolve(hostname);
+            if (metrics != null) {
+                metrics.dnsLookup(false, false);
+            }
+            return addresses;
+        } catch (UnknownHostException e) {
+            entry = entries.get(hostname);
+            if (entry == null || now - entry.resolvedAt >= ttlMs + maxStaleMs) {
+                throw e;
+            }
+            LOGGER.debug("Could not resolve {}, using addresses resolved {} ms ago", hostname, now - entry.resolvedAt);
+            if (metrics != null) {
+                metrics.dnsLookup(false, true);
+            }
+            return entry.addresses;
+        }
+    }
+
+    /**
+     * Resolve the host, or wait for the resolution already running
+     */
+    private List<InetAddress> resolve(String hostname) throws UnknownHostException {
+        CompletableFuture<List<InetAddress>> started = new CompletableFuture<>();
+        CompletableFuture<List<InetAddress>> running = resolving.putIfAbsent(hostname, started);
+        if (running == null) {
+            try {
+                List<InetAddress> addresses = resolver.lookup(hostname);
+                put(hostname, addresses);
+                started.complete(addresses);
+            } catch (UnknownHostException | RuntimeException e) {
+                started.completeExceptionally(e);
+            } finally {
+                resolving.remove(hostname, started);
+            }
+            running = started;
+        }
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UnknownHostException) {
+                throw (UnknownHostException) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    private void refresh(String hostname) {
+        if (!refreshing.add(hostname)) {
+            return;
+        }
+        refresher.execute(() -> {
+            try {
+                resolve(hostname);
+            } catch (UnknownHostException | RuntimeException e) {
+                // the current addresses are kept until they are too stale
+                LOGGER.debug("Could not refresh the addresses of {}", hostname, e);
+            } finally {
+                refreshing.remove(hostname);
+            }
+        });
+    }
+
+    private void put(String hostname, List<InetAddress> addresses) {
+        long now = clock.getAsLong();
+        entries.put(hostname, new Entry(addresses, now));
+        if (entries.size() > maxHosts) {
+            evict(now);
+        }
+    }
+
+    /**
+     * Drop the entries which cannot be used anymore, then arbitrary ones until a tenth of the space is free
+     */
+    private void evict(long now) {
+        entries.values().removeIf(entry -> now - entry.resolvedAt >= maxTtlMs + maxStaleMs);
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxHosts * 0.9 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return The number of cached host names
+     */
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,58 @@
+package de.shoptimax;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import okhttp3.Call;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels a call still running at its deadline, including the reading of
+ * the response body, which the connect and read timeouts do not limit as a
+ * whole. One timer thread serves all inputs.
+ */
+class CallDeadline {
+
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+
+    private final ScheduledFuture<?> timeout;
+    private volatile boolean expired;
+
+    private CallDeadline(Call call, long timeoutMs) {
+        this.timeout = TIMER.schedule(() -> {
+            expired = true;
+            call.cancel();
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("jrp-call-deadline")
+                .setDaemon(true)
+                .build());
+        // most calls finish in time, their timeouts must not pile up in the queue
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * @param call The started call
+     * @param timeoutMs Time the call may take
+     * @return The deadline, to be released once the response has been read
+     */
+    static CallDeadline start(Call call, long timeoutMs) {
+        return new CallDeadline(call, timeoutMs);
+    }
+
+    /**
+     * @return true if the call was cancelled for missing its deadline
+     */
+    boolean isExpired() {
+        return expired;
+    }
+
+    void release() {
+        timeout.cancel(false);
+    }
+}
@@ -0,0 +1,195 @@
+package de.shoptimax;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+/**
+ * Durations of the phases of one HTTP call: DNS lookup, TCP connect, TLS
+ * handshake, time to the first response byte and body transfer, and whether
+ * a pooled connection was reused. An instance is attached to the request as
+ * tag and picked up by {@link #FACTORY}; the phases of retries and redirects
+ * add up. Events and reads happen on the thread running the call.
+ */
+public class CallTimings extends EventListener {
+
+    /**
+     * Listens to the calls whose request carries a CallTimings tag
+     */
+    public static final EventListener.Factory FACTORY = call -> {
+        CallTimings timings = call.request().tag(CallTimings.class);
+        return timings != null ? timings : EventListener.NONE;
+    };
+
+    private static final long NONE = -1;
+
+    private final JRPMetrics metrics;
+    private boolean started, recorded, reused;
+    private long dnsStart, connectStart, secureConnectStart, requestEnd, bodyStart;
+    private long dnsNs = NONE, connectNs = NONE, tlsNs = NONE, firstByteNs = NONE, bodyNs = NONE;
+
+    /**
+     * @param metrics The metrics the durations are recorded in once the call ended
+     */
+    public CallTimings(JRPMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return true if the call ran, false if the response was shared by another call
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * @return true if the call only used connections which were already open
+     */
+    public boolean isReused() {
+        return reused;
+    }
+
+    /**
+     * @return DNS lookup time in ns, -1 if there was none
+     */
+    public long getDnsNs() {
+        return dnsNs;
+    }
+
+    /**
+     * @return TCP connect time without the TLS handshake in ns, -1 if no connection was opened
+     */
+    public long getConnectNs() {
+        return connectNs;
+    }
+
+    /**
+     * @return TLS handshake time in ns, -1 if there was none
+     */
+    public long getTlsNs() {
+        return tlsNs;
+    }
+
+    /**
+     * @return Time from the request being sent to the response headers being read in ns, -1 if none arrived
+     */
+    public long getFirstByteNs() {
+        return firstByteNs;
+    }
+
+    /**
+     * @return Body transfer time in ns, -1 until the body was read completely
+     */
+    public long getBodyNs() {
+        return bodyNs;
+    }
+
+    private static long add(long total, long start) {
+        return Math.max(total, 0) + System.nanoTime() - start;
+    }
+
+    @Override
+    public void callStart(Call call) {
+        started = true;
+        // until connectStart shows a new connection is opened
+        reused = true;
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        dnsNs = add(dnsNs, dnsStart);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        reused = false;
+        connectStart = System.nanoTime();
+        secureConnectStart = 0;
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        secureConnectStart = System.nanoTime();
+        // the handshake is not part of the TCP connect
+        connectNs = add(connectNs, connectStart);
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        tlsNs = add(tlsNs, secureConnectStart);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        if (secureConnectStart == 0) {
+            connectNs = add(connectNs, connectStart);
+        }
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol,
+                              IOException ioe) {
+        if (secureConnectStart == 0) {
+            connectNs = add(connectNs, connectStart);
+        }
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+        bodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        bodyNs = add(bodyNs, bodyStart);
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        // responseHeadersStart is called before waiting for the response, not once it arrives
+        firstByteNs = add(firstByteNs, requestEnd);
+        // a redirect or retry starts over with a new body
+        bodyNs = NONE;
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        record();
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        record();
+    }
+
+    private void record() {
+        if (!recorded) {
+            recorded = true;
+            metrics.callTimings(dnsNs, connectNs, tlsNs, firstByteNs, bodyNs, reused);
+        }
+    }
+}
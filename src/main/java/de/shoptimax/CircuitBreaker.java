@@ -0,0 +1,101 @@
+package de.shoptimax;
+
+/**
+ * Circuit breaker of one target. After a number of consecutive failed
+ * requests the breaker opens and the target is not polled any more until
+ * the open time has passed, then single probe polls are let through
+ * (half-open) until enough of them succeed to close it again, or one fails
+ * and it opens again. Only one probe runs at a time; a probe without an
+ * outcome, e.g. because its tick was coalesced, is replaced after another
+ * open time.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final int failureThreshold, successThreshold;
+    private final long openMs;
+    private State state = State.CLOSED;
+    private int failures, successes;
+    private long openedAt, probeStartedAt;
+    private boolean probeInFlight;
+
+    /**
+     * @param failureThreshold Consecutive failures opening the breaker
+     * @param openMs Time the breaker stays open before probing in ms
+     * @param successThreshold Successful probes closing the breaker
+     */
+    public CircuitBreaker(int failureThreshold, long openMs, int successThreshold) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = openMs;
+        this.successThreshold = Math.max(1, successThreshold);
+    }
+
+    /**
+     * @param now The current time in ms
+     * @return true if the target may be polled
+     */
+    public synchronized boolean allowRequest(long now) {
+        if (state == State.OPEN && now - openedAt >= openMs) {
+            state = State.HALF_OPEN;
+            successes = 0;
+            probeInFlight = false;
+        }
+        if (state != State.HALF_OPEN) {
+            return state == State.CLOSED;
+        }
+        if (probeInFlight && now - probeStartedAt < openMs) {
+            return false;
+        }
+        probeInFlight = true;
+        probeStartedAt = now;
+        return true;
+    }
+
+    /**
+     * Record a successful request
+     * @return true if the breaker closed
+     */
+    public synchronized boolean onSuccess() {
+        failures = 0;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN && ++successes >= successThreshold) {
+            state = State.CLOSED;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record a failed request
+     * @param now The current time in ms
+     * @return true if the breaker opened from closed
+     */
+    public synchronized boolean onFailure(long now) {
+        probeInFlight = false;
+        if (state == State.HALF_OPEN) {
+            // failed probe, wait another open time
+            state = State.OPEN;
+            openedAt = now;
+            return false;
+        }
+        if (state == State.CLOSED && ++failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+}
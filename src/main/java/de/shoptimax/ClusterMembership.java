@@ -0,0 +1,51 @@
+package de.shoptimax;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Source of the nodes sharing the targets of a sharded input
+ */
+public interface ClusterMembership {
+
+    /**
+     * @return The id of this node
+     */
+    String getLocalNodeId();
+
+    /**
+     * @return The ids of all active nodes, including this one
+     * @throws RuntimeException if the nodes cannot be determined right now
+     */
+    Set<String> getActiveNodeIds();
+
+    /**
+     * Fixed list of nodes which can be changed at any time, for a single
+     * node or to try out rebalancing
+     */
+    class InMemory implements ClusterMembership {
+        private final String localNodeId;
+        private volatile Set<String> nodeIds;
+
+        public InMemory(String localNodeId, Collection<String> nodeIds) {
+            this.localNodeId = localNodeId;
+            setNodeIds(nodeIds);
+        }
+
+        @Override
+        public String getLocalNodeId() {
+            return localNodeId;
+        }
+
+        @Override
+        public Set<String> getActiveNodeIds() {
+            return nodeIds;
+        }
+
+        public void setNodeIds(Collection<String> nodeIds) {
+            this.nodeIds = ImmutableSet.copyOf(nodeIds);
+        }
+    }
+}
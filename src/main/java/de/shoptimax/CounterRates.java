@@ -0,0 +1,96 @@
+package de.shoptimax;
+
+import de.shoptimax.util.SampleTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Turns monotonically increasing counters of a target into per-second
+ * rates by comparing every numeric field with its value in the previous
+ * poll. A counter which went down was reset, for example by a restart of
+ * the server, and counts from zero. Only used by the task polling the
+ * target.
+ */
+public class CounterRates {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CounterRates.class.getName());
+
+    // bounds the memory of targets with many elements or fields
+    private static final int MAX_FIELDS = 1 << 16;
+
+    private final Set<String> rateFields;
+    private final Pattern ratePattern;
+    private final boolean dropUnchanged;
+    private final SampleTable samples = new SampleTable(MAX_FIELDS);
+    private boolean unchanged, full;
+
+    /**
+     * @param rateFields Fields to compute rates for, may be null
+     * @param ratePattern Pattern of further fields to compute rates for, may be null
+     * @param dropUnchanged Whether all numeric fields are tracked to drop unchanged ones
+     */
+    public CounterRates(Set<String> rateFields, Pattern ratePattern, boolean dropUnchanged) {
+        this.rateFields = rateFields;
+        this.ratePattern = ratePattern;
+        this.dropUnchanged = dropUnchanged;
+    }
+
+    /**
+     * @return true if the numeric field has to be passed to {@link #update(String, int, double, long)}
+     */
+    public boolean isTracked(String name) {
+        return dropUnchanged || isRateField(name);
+    }
+
+    public boolean isRateField(String name) {
+        return (rateFields != null && rateFields.contains(name))
+                || (ratePattern != null && ratePattern.matcher(name).matches());
+    }
+
+    /**
+     * Record the sample of a numeric field
+     * @param name The field name
+     * @param element The index of the element holding the field, -1 for a single object
+     * @param value The value
+     * @param timeMs The time of the sample in ms
+     * @return The rate per second since the previous sample, NaN if the field has none
+     */
+    public double update(String name, int element, double value, long timeMs) {
+        int slot = samples.find(name, element);
+        if (slot < 0) {
+            unchanged = false;
+            if (!samples.add(name, element, value, timeMs) && !full) {
+                full = true;
+                LOGGER.warn("More than {} numeric fields, no rates for further fields", MAX_FIELDS);
+            }
+            return Double.NaN;
+        }
+        double previous = samples.valueAt(slot);
+        long elapsedMs = timeMs - samples.timeAt(slot);
+        unchanged = value == previous;
+        if (elapsedMs <= 0) {
+            // two samples in the same ms, keep the older one as base
+            return Double.NaN;
+        }
+        samples.setAt(slot, value, timeMs);
+        if (!isRateField(name)) {
+            return Double.NaN;
+        }
+        double delta = value >= previous ? value - previous : value;
+        return delta * 1000.0 / elapsedMs;
+    }
+
+    /**
+     * @return true if the value of the last updated field equals its previous sample
+     */
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+
+    public boolean isDropUnchanged() {
+        return dropUnchanged;
+    }
+}
@@ -0,0 +1,192 @@
+package de.shoptimax;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import de.shoptimax.util.LimitedSource;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Node-wide registry of running and recently finished requests, shared by
+ * all inputs which enabled it. A request with the same URL, headers and
+ * credentials as one still in flight waits for that one instead of going
+ * upstream again, and a response received within the freshness window of
+ * the requesting input is handed out once more. Every input processes the
+ * shared response on its own. Shared responses are buffered in memory.
+ */
+@Singleton
+public class FetchRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FetchRegistry.class.getName());
+
+    /**
+     * Longest freshness window, finished requests are dropped after it
+     */
+    public static final long MAX_WINDOW_MS = 60_000;
+    private static final long SWEEP_INTERVAL_MS = 1000;
+
+    /**
+     * A buffered response
+     */
+    public static class Fetched {
+        private final Protocol protocol;
+        private final int code;
+        private final String message;
+        private final Headers headers;
+        private final MediaType contentType;
+        private final byte[] body;
+        private final long sentAt, receivedAt;
+
+        private Fetched(Response response, byte[] body) {
+            this.protocol = response.protocol();
+            this.code = response.code();
+            this.message = response.message();
+            this.headers = response.headers();
+            this.contentType = response.body() != null ? response.body().contentType() : null;
+            this.body = body;
+            this.sentAt = response.sentRequestAtMillis();
+            this.receivedAt = response.receivedResponseAtMillis();
+        }
+
+        /**
+         * @param request The request of the input the response is handed to
+         * @return A new response reading the buffered body
+         */
+        public Response toResponse(Request request) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(protocol)
+                    .code(code)
+                    .message(message)
+                    .headers(headers)
+                    .body(ResponseBody.create(contentType, body))
+                    .sentRequestAtMillis(sentAt)
+                    .receivedResponseAtMillis(receivedAt)
+                    .build();
+        }
+    }
+
+    private final ConcurrentMap<String, CompletableFuture<Fetched>> fetches = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong();
+
+    /**
+     * Join the request in flight or reuse the fresh response for the key,
+     * else start the request
+     * @param key The key of the request, see {@link #key}
+     * @param windowMs How old a finished response may be to be reused
+     * @param start Runs the request and completes the future with the buffered response or the failure
+     * @param metrics Counts shared responses
+     * @return The response
+     */
+    public CompletableFuture<Fetched> fetch(String key, long windowMs, Consumer<CompletableFuture<Fetched>> start,
+                                            JRPMetrics metrics) {
+        long now = System.currentTimeMillis();
+        sweep(now);
+        CompletableFuture<Fetched> started = new CompletableFuture<>();
+        while (true) {
+            CompletableFuture<Fetched> existing = fetches.get(key);
+            if (existing != null && isUsable(existing, now, Math.min(windowMs, MAX_WINDOW_MS))) {
+                LOGGER.debug("Sharing response of {}", key);
+                metrics.sharedFetch();
+                return existing;
+            }
+            if (existing == null ? fetches.putIfAbsent(key, started) == null : fetches.replace(key, existing, started)) {
+                break;
+            }
+        }
+        // failures are only shared with the requests which waited for them
+        started.whenComplete((fetched, e) -> {
+            if (e != null) {
+                fetches.remove(key, started);
+            }
+        });
+        try {
+            start.accept(started);
+        } catch (RuntimeException e) {
+            started.completeExceptionally(e);
+        }
+        return started;
+    }
+
+    private static boolean isUsable(CompletableFuture<Fetched> fetch, long now, long windowMs) {
+        if (!fetch.isDone()) {
+            return true;
+        }
+        return !fetch.isCompletedExceptionally() && now - fetch.join().receivedAt <= windowMs;
+    }
+
+    /**
+     * Drop the responses which are too old to be reused by anyone, at most once per second
+     */
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_MS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        fetches.values().removeIf(fetch -> fetch.isDone() && !isUsable(fetch, now, MAX_WINDOW_MS));
+    }
+
+    /**
+     * Read and close the response
+     * @param maxBodySize The maximum body size in bytes, 0 for no limit
+     * @return The buffered response
+     * @throws LimitedSource.BodyTooLargeException if the body exceeds the limit
+     */
+    public static Fetched buffer(Response response, long maxBodySize) throws IOException {
+        try (Response closed = response) {
+            ResponseBody body = closed.body();
+            if (body == null) {
+                return new Fetched(closed, new byte[0]);
+            }
+            if (maxBodySize <= 0) {
+                return new Fetched(closed, body.bytes());
+            }
+            if (body.contentLength() > maxBodySize) {
+                throw new LimitedSource.BodyTooLargeException(maxBodySize);
+            }
+            Buffer buffer = new Buffer();
+            try (BufferedSource source = Okio.buffer(new LimitedSource(body.source(), maxBodySize))) {
+                source.readAll(buffer);
+            }
+            return new Fetched(closed, buffer.readByteArray());
+        }
+    }
+
+    /**
+     * @return A hash of everything making a request return a different response
+     */
+    public static String key(Request request, String username, String password, URI proxy) {
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putString(request.method(), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(request.url().toString(), StandardCharsets.UTF_8).putByte((byte) 0);
+        Headers headers = request.headers();
+        for (int i = 0; i < headers.size(); i++) {
+            hasher.putString(headers.name(i).toLowerCase(Locale.ENGLISH), StandardCharsets.UTF_8).putByte((byte) 0)
+                    .putString(headers.value(i), StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        hasher.putString(String.valueOf(username), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(String.valueOf(password), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(String.valueOf(proxy), StandardCharsets.UTF_8);
+        return hasher.hash().toString();
+    }
+}
@@ -0,0 +1,234 @@
+package de.shoptimax;
+
+import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
+import de.shoptimax.util.RecordBatch;
+import io.netty.buffer.ByteBuf;
+import org.graylog2.inputs.codecs.GelfCodec;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.configuration.ConfigurationRequest;
+import org.graylog2.plugin.configuration.fields.ConfigurationField;
+import org.graylog2.plugin.configuration.fields.NumberField;
+import org.graylog2.plugin.inputs.annotations.Codec;
+import org.graylog2.plugin.inputs.annotations.ConfigClass;
+import org.graylog2.plugin.inputs.annotations.FactoryClass;
+import org.graylog2.plugin.inputs.codecs.AbstractCodec;
+import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.graylog2.plugin.inputs.codecs.MultiMessageCodec;
+import org.graylog2.plugin.journal.RawMessage;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the record batches written by the transport into messages. The
+ * fields are already typed, so unlike GELF no JSON is parsed again. Field
+ * names and values follow the GELF rules, payloads which are not batches
+ * (journal entries written by older versions) are decoded as GELF.
+ */
+@Codec(name = "jrp", displayName = "JSON Remote Polling")
+public class JRPCodec extends AbstractCodec implements MultiMessageCodec {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JRPCodec.class.getName());
+
+    public static final String CK_BATCH_RECORDS = "batchRecords";
+    public static final String CK_BATCH_BYTES = "batchBytes";
+    public static final int DEFAULT_BATCH_RECORDS = 100;
+    public static final int DEFAULT_BATCH_BYTES = 256 * 1024;
+
+    private final BatchAggregator aggregator;
+    private final GelfCodec gelfCodec;
+
+    @AssistedInject
+    public JRPCodec(@Assisted Configuration configuration) {
+        super(configuration);
+        this.aggregator = new BatchAggregator(configuration.getInt(CK_BATCH_RECORDS, DEFAULT_BATCH_RECORDS),
+                configuration.getInt(CK_BATCH_BYTES, DEFAULT_BATCH_BYTES));
+        this.gelfCodec = new GelfCodec(configuration, null);
+    }
+
+    /**
+     * Decode a payload holding a single message. Graylog decodes with
+     * {@link #decodeMessages(RawMessage)}, this only returns the first
+     * message of a batch.
+     */
+    @Nullable
+    @Override
+    public Message decode(RawMessage rawMessage) {
+        Collection<Message> messages = decodeMessages(rawMessage);
+        return messages == null || messages.isEmpty() ? null : messages.iterator().next();
+    }
+
+    @Nullable
+    @Override
+    public Collection<Message> decodeMessages(RawMessage rawMessage) {
+        final byte[] payload = rawMessage.getPayload();
+        if (!RecordBatch.isBatch(payload)) {
+            Message message = gelfCodec.decode(rawMessage);
+            return message == null ? null : Collections.singletonList(message);
+        }
+        final List<Message> messages = new ArrayList<>();
+        final Map<String, Object> fields = new LinkedHashMap<>();
+        RecordBatch.read(payload, new RecordBatch.RecordHandler() {
+            @Override
+            public void field(String key, Object value) {
+                // later fields win, like keys repeated in a JSON object
+                fields.put(key, value);
+            }
+
+            @Override
+            public void endRecord() {
+                Message message = toMessage(fields, rawMessage);
+                if (message != null) {
+                    messages.add(message);
+                }
+                fields.clear();
+            }
+        });
+        return messages;
+    }
+
+    /**
+     * @return The message, or null if a mandatory field is missing
+     */
+    private static Message toMessage(Map<String, Object> fields, RawMessage rawMessage) {
+        Object shortMessage = fields.get("short_message");
+        if (shortMessage == null || shortMessage.toString().isEmpty()) {
+            shortMessage = fields.get("message");
+        }
+        Object host = fields.get("host");
+        if (shortMessage == null || shortMessage.toString().isEmpty() || host == null || host.toString().isEmpty()) {
+            // one broken record must not drop the whole batch
+            LOGGER.warn("Record {} of message {} has no short_message or host, skipping", fields.get("_label"), rawMessage.getId());
+            return null;
+        }
+        Message message = new Message(shortMessage.toString(), host.toString(), timestamp(fields.get("timestamp"), rawMessage));
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            String key = field.getKey();
+            Object value = field.getValue();
+            if (key.equals("version")) {
+                continue;
+            }
+            if (key.startsWith("_") && key.length() > 1) {
+                key = key.substring(1);
+            }
+            if (key.equals("short_message") || key.equals("message") || key.equals("host")) {
+                continue;
+            }
+            // the same fields GELF refuses, _id and the fields set by the constructor
+            if (message.getField(key) != null
+                    || (Message.RESERVED_FIELDS.contains(key) && !Message.RESERVED_SETTABLE_FIELDS.contains(key))) {
+                continue;
+            }
+            if (value == null) {
+                LOGGER.debug("Field [{}] is NULL. Skipping.", key);
+                continue;
+            }
+            message.addField(key, value);
+        }
+        return message;
+    }
+
+    private static DateTime timestamp(Object value, RawMessage rawMessage) {
+        if (value instanceof Number) {
+            return Tools.dateTimeFromDouble(((Number) value).doubleValue());
+        }
+        if (value instanceof String) {
+            try {
+                return Tools.dateTimeFromDouble(Double.parseDouble((String) value));
+            } catch (NumberFormatException e) {
+                LOGGER.debug("Invalid timestamp {}, using the receive time", value);
+            }
+        }
+        return rawMessage.getTimestamp();
+    }
+
+    @Nullable
+    @Override
+    public CodecAggregator getAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * Carries the batch limits to the transport, which assembles the
+     * batches itself. Chunks handed to it are passed on as they are and
+     * only accepted if they are complete batches.
+     */
+    public static class BatchAggregator implements CodecAggregator {
+        private final int maxRecords, maxBytes;
+
+        public BatchAggregator(int maxRecords, int maxBytes) {
+            this.maxRecords = Math.max(1, maxRecords);
+            this.maxBytes = Math.max(1, maxBytes);
+        }
+
+        public int getMaxRecords() {
+            return maxRecords;
+        }
+
+        public int getMaxBytes() {
+            return maxBytes;
+        }
+
+        @Nullable
+        @Override
+        public Result addChunk(ByteBuf buf) {
+            byte[] header = new byte[Math.min(3, buf.readableBytes())];
+            buf.getBytes(buf.readerIndex(), header);
+            return new Result(buf, RecordBatch.isBatch(header));
+        }
+    }
+
+    @FactoryClass
+    public interface Factory extends AbstractCodec.Factory<JRPCodec> {
+        @Override
+        JRPCodec create(Configuration configuration);
+
+        @Override
+        Config getConfig();
+
+        @Override
+        Descriptor getDescriptor();
+    }
+
+    @ConfigClass
+    public static class Config extends AbstractCodec.Config {
+        @Override
+        public ConfigurationRequest getRequestedConfiguration() {
+            final ConfigurationRequest cr = super.getRequestedConfiguration();
+            cr.addField(new NumberField(CK_BATCH_RECORDS,
+                    "Batch size",
+                    DEFAULT_BATCH_RECORDS,
+                    "Maximum number of messages written to the journal as one entry. 1: no batching",
+                    ConfigurationField.Optional.OPTIONAL));
+            cr.addField(new NumberField(CK_BATCH_BYTES,
+                    "Batch bytes",
+                    DEFAULT_BATCH_BYTES,
+                    "Maximum size of a journal entry holding a batch of messages in bytes",
+                    ConfigurationField.Optional.OPTIONAL));
+            return cr;
+        }
+
+        @Override
+        public void overrideDefaultValues(ConfigurationRequest cr) {
+        }
+    }
+
+    public static class Descriptor extends AbstractCodec.Descriptor {
+        @Inject
+        public Descriptor() {
+            super(JRPCodec.class.getAnnotation(Codec.class).displayName());
+        }
+    }
+}
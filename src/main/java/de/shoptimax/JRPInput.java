@@ -3,7 +3,6 @@ package de.shoptimax;
 import com.codahale.metrics.MetricRegistry;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
-import org.graylog2.inputs.codecs.GelfCodec;
 import org.graylog2.plugin.LocalMetricRegistry;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.configuration.Configuration;
@@ -22,7 +21,7 @@ public class JRPInput extends MessageInput {
     @AssistedInject
     public JRPInput(MetricRegistry metricRegistry, @Assisted Configuration configuration,
                     JRPInputTransport.Factory transportFactory, LocalMetricRegistry localRegistry,
-                    GelfCodec.Factory codecFactory, Config config,
+                    JRPCodec.Factory codecFactory, Config config,
                     Descriptor descriptor, ServerStatus serverStatus) {
         super(metricRegistry, configuration, transportFactory.create(configuration), localRegistry,
                 codecFactory.create(configuration), config, descriptor, serverStatus);
@@ -48,7 +47,7 @@ public class JRPInput extends MessageInput {
 
     public static class Config extends MessageInput.Config {
         @Inject
-        public Config(JRPInputTransport.Factory transport, GelfCodec.Factory codec) {
+        public Config(JRPInputTransport.Factory transport, JRPCodec.Factory codec) {
             super(transport.getConfig(), codec.getConfig());
         }
     }
@@ -1,9 +1,36 @@
 package de.shoptimax;
 
+import de.shoptimax.util.FieldProjection;
+import de.shoptimax.util.JsonRootPath;
+
 import java.net.URI;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 public class JRPInputConfig {
+
+    /**
+     * HTTP versions used to talk to the targets
+     */
+    public enum HttpProtocol {
+        // HTTP/2 if the server offers it in the TLS handshake, else HTTP/1.1
+        DEFAULT,
+        HTTP_1_1,
+        // HTTP/2 without TLS and without an upgrade, for http:// targets known to support it
+        H2_PRIOR_KNOWLEDGE
+    }
+
+    /**
+     * What happens to a response body identical to the previous one
+     */
+    public enum UnchangedResponses {
+        PUBLISH,
+        SKIP,
+        // skip the body, but publish a short message so the target is still seen as alive
+        HEARTBEAT
+    }
+
     private String url,label;
     private String[] requestHeadersToSend;
     //Basic Auth
@@ -12,6 +39,46 @@ public class JRPInputConfig {
     private String[] responseHeadersToRecord;
     private boolean logResponseBody;
     private TimeUnit intervalUnit,timeoutUnit;
+    private int fetchPoolSize;
+    private PollScheduler.ExecutionMode executionMode = PollScheduler.ExecutionMode.POOLED;
+    private int maxInFlight, maxInFlightPerHost;
+    private PollScheduler.OverrunPolicy overrunPolicy = PollScheduler.OverrunPolicy.COALESCE;
+    private boolean sharded;
+    private boolean sharedFetch;
+    private int sharedFetchWindow = 1000;
+    private boolean callTimings;
+    private boolean dnsCache;
+    private int dnsCacheTtl = 60;
+    private int readTimeout;
+    private int writeTimeout;
+    private int callTimeout;
+    private int maxIdleConnections;
+    private int keepAlive = 300;
+    private HttpProtocol httpProtocol = HttpProtocol.DEFAULT;
+    private JsonRootPath rootPath;
+    private FieldProjection projection;
+    private boolean passThrough;
+    private boolean ndjson, tail;
+    private int maxBodySize, maxFullMessageSize;
+    private boolean dedup;
+    private Set<String> dedupFields;
+    private int dedupCapacity = 4096;
+    private Set<String> rateFields;
+    private Pattern ratePattern;
+    private boolean dropUnchanged;
+    private int maxLineLength = 1024 * 1024;
+    private boolean conditionalGet, suppressUnchanged, unchangedHeartbeat;
+    private int maxPages = 1;
+    private JsonRootPath nextPagePath;
+    private String cursorParam, watermarkField, watermarkParam;
+    private boolean adaptiveInterval;
+    private int minInterval, maxInterval;
+    private int breakerFailures, breakerOpenTime, breakerProbes;
+    private boolean throttlingAllowed;
+    private int maxMessagesPerSecond;
+    // messages written to the journal as one record batch, the limits of the codec unless it passes its own
+    private int batchRecords = JRPCodec.DEFAULT_BATCH_RECORDS;
+    private int batchBytes = JRPCodec.DEFAULT_BATCH_BYTES;
 
     public URI getHttpProxyUri() {
         return httpProxyUri;
@@ -110,4 +177,426 @@ public class JRPInputConfig {
     public void setTimeoutUnit(TimeUnit timeoutUnit) {
         this.timeoutUnit = timeoutUnit;
     }
+
+    public int getFetchPoolSize() {
+        return fetchPoolSize;
+    }
+
+    public void setFetchPoolSize(int fetchPoolSize) {
+        this.fetchPoolSize = fetchPoolSize;
+    }
+
+    public PollScheduler.ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(PollScheduler.ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getMaxInFlightPerHost() {
+        return maxInFlightPerHost;
+    }
+
+    public void setMaxInFlightPerHost(int maxInFlightPerHost) {
+        this.maxInFlightPerHost = maxInFlightPerHost;
+    }
+
+    public PollScheduler.OverrunPolicy getOverrunPolicy() {
+        return overrunPolicy;
+    }
+
+    public void setOverrunPolicy(PollScheduler.OverrunPolicy overrunPolicy) {
+        this.overrunPolicy = overrunPolicy;
+    }
+
+    public JsonRootPath getRootPath() {
+        return rootPath;
+    }
+
+    public void setRootPath(JsonRootPath rootPath) {
+        this.rootPath = rootPath;
+    }
+
+    public boolean isPassThrough() {
+        return passThrough;
+    }
+
+    public void setPassThrough(boolean passThrough) {
+        this.passThrough = passThrough;
+    }
+
+    public boolean isConditionalGet() {
+        return conditionalGet;
+    }
+
+    public void setConditionalGet(boolean conditionalGet) {
+        this.conditionalGet = conditionalGet;
+    }
+
+    public boolean isSuppressUnchanged() {
+        return suppressUnchanged;
+    }
+
+    public void setSuppressUnchanged(boolean suppressUnchanged) {
+        this.suppressUnchanged = suppressUnchanged;
+    }
+
+    public boolean isUnchangedHeartbeat() {
+        return unchangedHeartbeat;
+    }
+
+    public void setUnchangedHeartbeat(boolean unchangedHeartbeat) {
+        this.unchangedHeartbeat = unchangedHeartbeat;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    public void setMaxPages(int maxPages) {
+        this.maxPages = maxPages;
+    }
+
+    public JsonRootPath getNextPagePath() {
+        return nextPagePath;
+    }
+
+    public void setNextPagePath(JsonRootPath nextPagePath) {
+        this.nextPagePath = nextPagePath;
+    }
+
+    public String getCursorParam() {
+        return cursorParam;
+    }
+
+    public void setCursorParam(String cursorParam) {
+        this.cursorParam = cursorParam;
+    }
+
+    public String getWatermarkField() {
+        return watermarkField;
+    }
+
+    public void setWatermarkField(String watermarkField) {
+        this.watermarkField = watermarkField;
+    }
+
+    public String getWatermarkParam() {
+        return watermarkParam;
+    }
+
+    public void setWatermarkParam(String watermarkParam) {
+        this.watermarkParam = watermarkParam;
+    }
+
+    public boolean isAdaptiveInterval() {
+        return adaptiveInterval;
+    }
+
+    public void setAdaptiveInterval(boolean adaptiveInterval) {
+        this.adaptiveInterval = adaptiveInterval;
+    }
+
+    public int getMinInterval() {
+        return minInterval;
+    }
+
+    public void setMinInterval(int minInterval) {
+        this.minInterval = minInterval;
+    }
+
+    public int getMaxInterval() {
+        return maxInterval;
+    }
+
+    public void setMaxInterval(int maxInterval) {
+        this.maxInterval = maxInterval;
+    }
+
+    public int getBreakerFailures() {
+        return breakerFailures;
+    }
+
+    public void setBreakerFailures(int breakerFailures) {
+        this.breakerFailures = breakerFailures;
+    }
+
+    public int getBreakerOpenTime() {
+        return breakerOpenTime;
+    }
+
+    public void setBreakerOpenTime(int breakerOpenTime) {
+        this.breakerOpenTime = breakerOpenTime;
+    }
+
+    public int getBreakerProbes() {
+        return breakerProbes;
+    }
+
+    public void setBreakerProbes(int breakerProbes) {
+        this.breakerProbes = breakerProbes;
+    }
+
+    public boolean isThrottlingAllowed() {
+        return throttlingAllowed;
+    }
+
+    public void setThrottlingAllowed(boolean throttlingAllowed) {
+        this.throttlingAllowed = throttlingAllowed;
+    }
+
+    public int getMaxMessagesPerSecond() {
+        return maxMessagesPerSecond;
+    }
+
+    public void setMaxMessagesPerSecond(int maxMessagesPerSecond) {
+        this.maxMessagesPerSecond = maxMessagesPerSecond;
+    }
+
+    public int getBatchRecords() {
+        return batchRecords;
+    }
+
+    public void setBatchRecords(int batchRecords) {
+        this.batchRecords = batchRecords;
+    }
+
+    public int getBatchBytes() {
+        return batchBytes;
+    }
+
+    public void setBatchBytes(int batchBytes) {
+        this.batchBytes = batchBytes;
+    }
+
+    public boolean isNdjson() {
+        return ndjson;
+    }
+
+    public void setNdjson(boolean ndjson) {
+        this.ndjson = ndjson;
+    }
+
+    public boolean isTail() {
+        return tail;
+    }
+
+    public void setTail(boolean tail) {
+        this.tail = tail;
+    }
+
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    public void setMaxLineLength(int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+    }
+
+    public int getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public void setMaxBodySize(int maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    public int getMaxFullMessageSize() {
+        return maxFullMessageSize;
+    }
+
+    public void setMaxFullMessageSize(int maxFullMessageSize) {
+        this.maxFullMessageSize = maxFullMessageSize;
+    }
+
+    public boolean isDedup() {
+        return dedup;
+    }
+
+    public void setDedup(boolean dedup) {
+        this.dedup = dedup;
+    }
+
+    /**
+     * @return The fields identifying a record, null to compare the whole record
+     */
+    public Set<String> getDedupFields() {
+        return dedupFields;
+    }
+
+    public void setDedupFields(Set<String> dedupFields) {
+        this.dedupFields = dedupFields;
+    }
+
+    public int getDedupCapacity() {
+        return dedupCapacity;
+    }
+
+    public void setDedupCapacity(int dedupCapacity) {
+        this.dedupCapacity = dedupCapacity;
+    }
+
+    /**
+     * @return Counter fields to publish rates for, null if none
+     */
+    public Set<String> getRateFields() {
+        return rateFields;
+    }
+
+    public void setRateFields(Set<String> rateFields) {
+        this.rateFields = rateFields;
+    }
+
+    public Pattern getRatePattern() {
+        return ratePattern;
+    }
+
+    public void setRatePattern(Pattern ratePattern) {
+        this.ratePattern = ratePattern;
+    }
+
+    public boolean isDropUnchanged() {
+        return dropUnchanged;
+    }
+
+    public void setDropUnchanged(boolean dropUnchanged) {
+        this.dropUnchanged = dropUnchanged;
+    }
+
+    /**
+     * @return The include, exclude and rename rules of element fields, null if none
+     */
+    public FieldProjection getProjection() {
+        return projection;
+    }
+
+    public void setProjection(FieldProjection projection) {
+        this.projection = projection;
+    }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    public void setSharded(boolean sharded) {
+        this.sharded = sharded;
+    }
+
+    public boolean isSharedFetch() {
+        return sharedFetch;
+    }
+
+    public void setSharedFetch(boolean sharedFetch) {
+        this.sharedFetch = sharedFetch;
+    }
+
+    /**
+     * @return How old a response of another input may be to be reused, in ms
+     */
+    public int getSharedFetchWindow() {
+        return sharedFetchWindow;
+    }
+
+    public void setSharedFetchWindow(int sharedFetchWindow) {
+        this.sharedFetchWindow = sharedFetchWindow;
+    }
+
+    public boolean isCallTimings() {
+        return callTimings;
+    }
+
+    public void setCallTimings(boolean callTimings) {
+        this.callTimings = callTimings;
+    }
+
+    public boolean isDnsCache() {
+        return dnsCache;
+    }
+
+    public void setDnsCache(boolean dnsCache) {
+        this.dnsCache = dnsCache;
+    }
+
+    /**
+     * @return The read timeout in the timeout unit, 0 to keep the default of the client
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * @return The write timeout in the timeout unit, 0 to keep the default of the client
+     */
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    public void setWriteTimeout(int writeTimeout) {
+        this.writeTimeout = writeTimeout;
+    }
+
+    /**
+     * @return The time a request may take including its body in the timeout unit, 0 for no limit
+     */
+    public int getCallTimeout() {
+        return callTimeout;
+    }
+
+    public void setCallTimeout(int callTimeout) {
+        this.callTimeout = callTimeout;
+    }
+
+    /**
+     * @return The idle connections kept by the pool of this input, 0 to use the pool shared with the server
+     */
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public void setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+    }
+
+    /**
+     * @return How long idle connections are kept, in s
+     */
+    public int getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(int keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public HttpProtocol getHttpProtocol() {
+        return httpProtocol;
+    }
+
+    public void setHttpProtocol(HttpProtocol httpProtocol) {
+        this.httpProtocol = httpProtocol;
+    }
+
+    /**
+     * @return How long resolved addresses are used, in s
+     */
+    public int getDnsCacheTtl() {
+        return dnsCacheTtl;
+    }
+
+    public void setDnsCacheTtl(int dnsCacheTtl) {
+        this.dnsCacheTtl = dnsCacheTtl;
+    }
 }
@@ -41,6 +41,7 @@ public class JRPInputModule extends PluginModule {
          * addConfigBeans();
          */
         installTransport(transportMapBinder(),"jrp-input-transport",JRPInputTransport.class);
+        addCodec("jrp", JRPCodec.class);
         installInput(inputsMapBinder(), JRPInput.class, JRPInput.Factory.class);
     }
 }
@@ -2,12 +2,14 @@ package de.shoptimax;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.MetricSet;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.collect.Maps;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 
 import org.apache.commons.lang3.StringUtils;
+import org.graylog2.cluster.NodeService;
+import org.graylog2.database.MongoConnection;
+import org.graylog2.inputs.Input;
+import org.graylog2.inputs.InputService;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
@@ -17,42 +19,48 @@ import org.graylog2.plugin.inputs.MisfireException;
 import org.graylog2.plugin.inputs.annotations.ConfigClass;
 import org.graylog2.plugin.inputs.annotations.FactoryClass;
 import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.graylog2.plugin.inputs.transports.ThrottleableTransport;
 import org.graylog2.plugin.inputs.transports.Transport;
 import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.plugin.system.NodeId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-// import com.jayway.jsonpath.JsonPath;
-// import com.jayway.jsonpath.ReadContext;
-
-import javax.ws.rs.core.HttpHeaders;
-import javax.ws.rs.core.MediaType;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.net.ConnectException;
 import java.net.URI;
-import java.net.URL;
 import java.net.Proxy;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.regex.PatternSyntaxException;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import com.google.common.collect.Lists;
 import de.shoptimax.util.BasicAuthInterceptor;
-import okhttp3.Headers;
+import de.shoptimax.util.FieldProjection;
+import de.shoptimax.util.FingerprintCache;
+import de.shoptimax.util.JsonRootPath;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.OkHttpClient.Builder;
-import okhttp3.Response;
-
-import java.text.NumberFormat;
-import java.text.ParseException;
+import okhttp3.Protocol;
 
 /**
  * Main class, launches the Graylog input and starts a periodic HttpClient Monitor
  * polling remote JSON URIs to store the received GELF data.
  */
-public class JRPInputTransport implements Transport {
+public class JRPInputTransport extends ThrottleableTransport {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JRPInputTransport.class.getName());
     private static final String CK_CONFIG_URL = "configURL";
@@ -62,39 +70,110 @@ public class JRPInputTransport implements Transport {
     private static final String CK_CONFIG_PASSWORD = "configPassword";
     private static final String CK_CONFIG_TIMEOUT = "configTimeout";
     private static final String CK_CONFIG_TIMEOUT_UNIT = "configTimeoutUnit";
+    private static final String CK_CONFIG_READ_TIMEOUT = "configReadTimeout";
+    private static final String CK_CONFIG_WRITE_TIMEOUT = "configWriteTimeout";
+    private static final String CK_CONFIG_CALL_TIMEOUT = "configCallTimeout";
+    private static final String CK_CONFIG_MAX_IDLE_CONNECTIONS = "configMaxIdleConnections";
+    private static final String CK_CONFIG_KEEP_ALIVE = "configKeepAlive";
+    private static final String CK_CONFIG_HTTP_PROTOCOL = "configHttpProtocol";
     private static final String CK_CONFIG_INTERVAL = "configInterval";
     private static final String CK_CONFIG_INTERVAL_UNIT = "configIntervalUnit";
     private static final String CK_CONFIG_HEADERS_TO_RECORD = "configHeadersToRecord";
     private static final String CK_CONFIG_LOG_RESPONSE_BODY = "configLogResponseBody";
+    private static final String CK_CONFIG_MAX_BODY_SIZE = "configMaxBodySize";
+    private static final String CK_CONFIG_MAX_FULL_MESSAGE_SIZE = "configMaxFullMessageSize";
     private static final String CK_CONFIG_HTTP_PROXY = "configHttpProxy";
+    private static final String CK_CONFIG_TARGETS = "configTargets";
+    private static final String CK_CONFIG_FETCH_POOL_SIZE = "configFetchPoolSize";
+    private static final String CK_CONFIG_EXECUTION_MODE = "configExecutionMode";
+    private static final String CK_CONFIG_MAX_IN_FLIGHT = "configMaxInFlight";
+    private static final String CK_CONFIG_MAX_IN_FLIGHT_PER_HOST = "configMaxInFlightPerHost";
+    private static final String CK_CONFIG_OVERRUN_POLICY = "configOverrunPolicy";
+    private static final String CK_CONFIG_SHARDED = "configSharded";
+    private static final String CK_CONFIG_SHARED_FETCH = "configSharedFetchMaxAge";
+    private static final String CK_CONFIG_CALL_TIMINGS = "configCallTimings";
+    private static final String CK_CONFIG_DNS_CACHE = "configDnsCacheTtl";
+    private static final String CK_CONFIG_ROOT_PATH = "configRootPath";
+    private static final String CK_CONFIG_INCLUDE_FIELDS = "configIncludeFields";
+    private static final String CK_CONFIG_EXCLUDE_FIELDS = "configExcludeFields";
+    private static final String CK_CONFIG_RENAME_FIELDS = "configRenameFields";
+    private static final String CK_CONFIG_FLATTEN = "configFlatten";
+    private static final String CK_CONFIG_PASS_THROUGH = "configPassThrough";
+    private static final String CK_CONFIG_NDJSON = "configNdjson";
+    private static final String CK_CONFIG_TAIL = "configTail";
+    private static final String CK_CONFIG_MAX_LINE_LENGTH = "configMaxLineLength";
+    private static final String CK_CONFIG_CONDITIONAL_GET = "configConditionalGet";
+    private static final String CK_CONFIG_UNCHANGED_RESPONSES = "configUnchangedResponses";
+    private static final String CK_CONFIG_MAX_PAGES = "configMaxPages";
+    private static final String CK_CONFIG_NEXT_PAGE_PATH = "configNextPagePath";
+    private static final String CK_CONFIG_CURSOR_PARAM = "configCursorParam";
+    private static final String CK_CONFIG_WATERMARK_FIELD = "configWatermarkField";
+    private static final String CK_CONFIG_WATERMARK_PARAM = "configWatermarkParam";
+    private static final String CK_CONFIG_DEDUP = "configDedupRecords";
+    private static final String CK_CONFIG_DEDUP_FIELDS = "configDedupFields";
+    private static final String CK_CONFIG_RATE_FIELDS = "configRateFields";
+    private static final String CK_CONFIG_RATE_PATTERN = "configRatePattern";
+    private static final String CK_CONFIG_DROP_UNCHANGED = "configDropUnchanged";
+    private static final String CK_CONFIG_ADAPTIVE_INTERVAL = "configAdaptiveIntervalRange";
+    private static final String CK_CONFIG_BREAKER = "configBreaker";
+    private static final String CK_CONFIG_MAX_MESSAGES_PER_SECOND = "configMaxMessagesPerSecond";
 
     private final Configuration configuration;
     private final MetricRegistry metricRegistry;
     private ServerStatus serverStatus;
-    private ScheduledExecutorService executorService;
-    private ScheduledFuture future;
+    private final MongoConnection mongoConnection;
+    private final InputService inputService;
+    private final NodeService nodeService;
+    private final NodeId nodeId;
+    private final FetchRegistry fetchRegistry;
+    private final CachingDns cachingDns;
+    private PollScheduler pollScheduler;
+    private TargetSharding sharding;
+    private List<PollTarget> targets;
     private MessageInput messageInput;
     private OkHttpClient httpClient;
+    private Dispatcher dispatcher;
+    // null if the connection pool of the server is used
+    private ConnectionPool connectionPool;
     private final Builder httpClientBuilder;
+    private final JRPMetrics metrics;
+    private JRPCodec.BatchAggregator batchAggregator;
 
     @AssistedInject
     public JRPInputTransport(@Assisted Configuration configuration,
+                             EventBus serverEventBus,
                              MetricRegistry metricRegistry,
                              ServerStatus serverStatus,
+                             MongoConnection mongoConnection,
+                             InputService inputService,
+                             NodeService nodeService,
+                             NodeId nodeId,
+                             FetchRegistry fetchRegistry,
+                             CachingDns cachingDns,
                              OkHttpClient httpClient) {
+        super(serverEventBus, configuration);
         this.configuration = configuration;
         this.metricRegistry = metricRegistry;
         this.serverStatus = serverStatus;
+        this.mongoConnection = mongoConnection;
+        this.inputService = inputService;
+        this.nodeService = nodeService;
+        this.nodeId = nodeId;
+        this.fetchRegistry = fetchRegistry;
+        this.cachingDns = cachingDns;
         this.httpClientBuilder = httpClient.newBuilder();
+        this.metrics = new JRPMetrics(metricRegistry);
     }
 
     @Override
     public void setMessageAggregator(CodecAggregator codecAggregator) {
-
+        // the transport assembles the batches, the codec only sets their limits
+        this.batchAggregator = codecAggregator instanceof JRPCodec.BatchAggregator
+                ? (JRPCodec.BatchAggregator) codecAggregator : null;
     }
 
     @Override
-    public void launch(MessageInput messageInput) throws MisfireException {
+    protected void doLaunch(MessageInput messageInput) throws MisfireException {
         this.messageInput = messageInput;
         JRPInputConfig jrpConfig = new JRPInputConfig();
         jrpConfig.setUrl(configuration.getString(CK_CONFIG_URL));
@@ -114,10 +193,114 @@ public class JRPInputTransport implements Transport {
         jrpConfig.setPassword(configuration.getString(CK_CONFIG_PASSWORD));
         jrpConfig.setExecutionInterval(configuration.getInt(CK_CONFIG_INTERVAL));
         jrpConfig.setTimeout(configuration.getInt(CK_CONFIG_TIMEOUT));
-        jrpConfig.setTimeoutUnit(TimeUnit.valueOf(configuration.getString(CK_CONFIG_TIMEOUT_UNIT)));
-        jrpConfig.setIntervalUnit(TimeUnit.valueOf(configuration.getString(CK_CONFIG_INTERVAL_UNIT)));
+        jrpConfig.setTimeoutUnit(parseEnum(CK_CONFIG_TIMEOUT_UNIT, TimeUnit.class, TimeUnit.SECONDS));
+        jrpConfig.setIntervalUnit(parseEnum(CK_CONFIG_INTERVAL_UNIT, TimeUnit.class, TimeUnit.MINUTES));
+        // 0: derived from the interval when the targets are scheduled
+        int[] adaptiveInterval = parseNumbers(CK_CONFIG_ADAPTIVE_INTERVAL, "-", "min-max", 0, 0);
+        if (adaptiveInterval != null) {
+            jrpConfig.setAdaptiveInterval(true);
+            jrpConfig.setMinInterval(adaptiveInterval[0]);
+            jrpConfig.setMaxInterval(adaptiveInterval[1]);
+        }
+        int[] breaker = parseNumbers(CK_CONFIG_BREAKER, ",", "failures,open time,probes", 0, 60, 1);
+        if (breaker != null) {
+            jrpConfig.setBreakerFailures(breaker[0]);
+            jrpConfig.setBreakerOpenTime(breaker[1]);
+            jrpConfig.setBreakerProbes(breaker[2]);
+        }
+        jrpConfig.setThrottlingAllowed(configuration.getBoolean(CK_THROTTLING_ALLOWED, false));
+        jrpConfig.setMaxMessagesPerSecond(configuration.getInt(CK_CONFIG_MAX_MESSAGES_PER_SECOND, 0));
+        if (batchAggregator != null) {
+            jrpConfig.setBatchRecords(batchAggregator.getMaxRecords());
+            jrpConfig.setBatchBytes(batchAggregator.getMaxBytes());
+        }
 
         jrpConfig.setLogResponseBody(configuration.getBoolean(CK_CONFIG_LOG_RESPONSE_BODY));
+        jrpConfig.setMaxBodySize(configuration.getInt(CK_CONFIG_MAX_BODY_SIZE, 64 * 1024 * 1024));
+        jrpConfig.setMaxFullMessageSize(configuration.getInt(CK_CONFIG_MAX_FULL_MESSAGE_SIZE, 32 * 1024));
+        jrpConfig.setFetchPoolSize(configuration.getInt(CK_CONFIG_FETCH_POOL_SIZE, 1));
+        jrpConfig.setExecutionMode(parseEnum(CK_CONFIG_EXECUTION_MODE, PollScheduler.ExecutionMode.class,
+                PollScheduler.ExecutionMode.POOLED));
+        jrpConfig.setMaxInFlight(configuration.getInt(CK_CONFIG_MAX_IN_FLIGHT, 64));
+        jrpConfig.setMaxInFlightPerHost(configuration.getInt(CK_CONFIG_MAX_IN_FLIGHT_PER_HOST, 5));
+        jrpConfig.setOverrunPolicy(parseEnum(CK_CONFIG_OVERRUN_POLICY, PollScheduler.OverrunPolicy.class,
+                PollScheduler.OverrunPolicy.COALESCE));
+        jrpConfig.setSharded(configuration.getBoolean(CK_CONFIG_SHARDED, false));
+        if (jrpConfig.isSharded() && !Boolean.TRUE.equals(messageInput.isGlobal())) {
+            // the other nodes never run a local input, their share of the targets would not be polled at all
+            throw new MisfireException("Sharding targets across nodes requires a global input.");
+        }
+        int sharedFetchMaxAge = configuration.getInt(CK_CONFIG_SHARED_FETCH, -1);
+        jrpConfig.setSharedFetch(sharedFetchMaxAge >= 0);
+        jrpConfig.setSharedFetchWindow(Math.max(sharedFetchMaxAge, 0));
+        jrpConfig.setCallTimings(configuration.getBoolean(CK_CONFIG_CALL_TIMINGS, false));
+        jrpConfig.setDnsCacheTtl(configuration.getInt(CK_CONFIG_DNS_CACHE, 0));
+        jrpConfig.setDnsCache(jrpConfig.getDnsCacheTtl() > 0);
+        jrpConfig.setReadTimeout(configuration.getInt(CK_CONFIG_READ_TIMEOUT, 0));
+        jrpConfig.setWriteTimeout(configuration.getInt(CK_CONFIG_WRITE_TIMEOUT, 0));
+        jrpConfig.setCallTimeout(configuration.getInt(CK_CONFIG_CALL_TIMEOUT, 0));
+        jrpConfig.setMaxIdleConnections(configuration.getInt(CK_CONFIG_MAX_IDLE_CONNECTIONS, 0));
+        jrpConfig.setKeepAlive(configuration.getInt(CK_CONFIG_KEEP_ALIVE, 300));
+        jrpConfig.setHttpProtocol(parseEnum(CK_CONFIG_HTTP_PROTOCOL, JRPInputConfig.HttpProtocol.class,
+                JRPInputConfig.HttpProtocol.DEFAULT));
+
+        String rootPath = configuration.getString(CK_CONFIG_ROOT_PATH);
+        if (StringUtils.isNotBlank(rootPath)) {
+            try {
+                jrpConfig.setRootPath(JsonRootPath.compile(rootPath));
+            } catch (IllegalArgumentException e) {
+                throw new MisfireException(e.getMessage(), e);
+            }
+        }
+
+        jrpConfig.setProjection(parseProjection(configuration));
+
+        jrpConfig.setPassThrough(configuration.getBoolean(CK_CONFIG_PASS_THROUGH, false));
+        jrpConfig.setNdjson(configuration.getBoolean(CK_CONFIG_NDJSON, false));
+        jrpConfig.setTail(configuration.getBoolean(CK_CONFIG_TAIL, false));
+        jrpConfig.setMaxLineLength(configuration.getInt(CK_CONFIG_MAX_LINE_LENGTH, 1024 * 1024));
+        if (jrpConfig.isTail() && !jrpConfig.isNdjson()) {
+            throw new MisfireException("Tailing a stream requires NDJSON mode.");
+        }
+        if (jrpConfig.isSharedFetch() && jrpConfig.isNdjson()) {
+            throw new MisfireException("NDJSON streams cannot be shared with other inputs.");
+        }
+        jrpConfig.setConditionalGet(configuration.getBoolean(CK_CONFIG_CONDITIONAL_GET, false));
+        JRPInputConfig.UnchangedResponses unchanged = parseEnum(CK_CONFIG_UNCHANGED_RESPONSES,
+                JRPInputConfig.UnchangedResponses.class, JRPInputConfig.UnchangedResponses.PUBLISH);
+        jrpConfig.setSuppressUnchanged(unchanged != JRPInputConfig.UnchangedResponses.PUBLISH);
+        jrpConfig.setUnchangedHeartbeat(unchanged == JRPInputConfig.UnchangedResponses.HEARTBEAT);
+
+        jrpConfig.setMaxPages(configuration.getInt(CK_CONFIG_MAX_PAGES, 1));
+        String nextPagePath = configuration.getString(CK_CONFIG_NEXT_PAGE_PATH);
+        if (StringUtils.isNotBlank(nextPagePath)) {
+            if (jrpConfig.getRootPath() == null) {
+                throw new MisfireException("The next page path requires a root path.");
+            }
+            try {
+                jrpConfig.setNextPagePath(JsonRootPath.compile(nextPagePath));
+            } catch (IllegalArgumentException e) {
+                throw new MisfireException(e.getMessage(), e);
+            }
+        }
+        jrpConfig.setCursorParam(StringUtils.trimToNull(configuration.getString(CK_CONFIG_CURSOR_PARAM)));
+        jrpConfig.setWatermarkField(StringUtils.trimToNull(configuration.getString(CK_CONFIG_WATERMARK_FIELD)));
+        jrpConfig.setWatermarkParam(StringUtils.trimToNull(configuration.getString(CK_CONFIG_WATERMARK_PARAM)));
+
+        jrpConfig.setDedupCapacity(configuration.getInt(CK_CONFIG_DEDUP, 0));
+        jrpConfig.setDedup(jrpConfig.getDedupCapacity() > 0);
+        jrpConfig.setDedupFields(parseFieldList(configuration.getString(CK_CONFIG_DEDUP_FIELDS)));
+
+        jrpConfig.setRateFields(parseFieldList(configuration.getString(CK_CONFIG_RATE_FIELDS)));
+        String ratePattern = configuration.getString(CK_CONFIG_RATE_PATTERN);
+        if (StringUtils.isNotBlank(ratePattern)) {
+            try {
+                jrpConfig.setRatePattern(Pattern.compile(ratePattern.trim()));
+            } catch (PatternSyntaxException e) {
+                throw new MisfireException("Invalid rate field pattern: " + e.getMessage(), e);
+            }
+        }
+        jrpConfig.setDropUnchanged(configuration.getBoolean(CK_CONFIG_DROP_UNCHANGED, false));
 
         String responseHeaders = configuration.getString(CK_CONFIG_HEADERS_TO_RECORD);
         if (StringUtils.isNotEmpty(responseHeaders)) {
@@ -125,21 +308,215 @@ public class JRPInputTransport implements Transport {
                     responseHeaders.split(","));
         }
 
+        targets = parseTargets(configuration.getString(CK_CONFIG_TARGETS), jrpConfig);
+        if (targets.isEmpty()) {
+            throw new MisfireException("Neither a URL nor a target list is configured.");
+        }
+        if (jrpConfig.getHttpProtocol() == JRPInputConfig.HttpProtocol.H2_PRIOR_KNOWLEDGE) {
+            for (PollTarget target : targets) {
+                if (!target.getUrl().toLowerCase(Locale.ENGLISH).startsWith("http:")) {
+                    throw new MisfireException("HTTP/2 with prior knowledge requires http:// URLs: " + target.getUrl());
+                }
+            }
+        }
+
         // now, configure and start!
         configBuilder(jrpConfig);
         startMonitoring(jrpConfig);
     }
 
+    /**
+     * Build the list of polled targets. Each line of the target list has the
+     * form "label|URL[|interval[|interval unit[|priority]]]", missing values are taken
+     * from the input config. Without a target list the single URL is polled.
+     * @param targetList The configured target list, may be empty
+     * @param config The JRPInputConfig holding the default values
+     * @return The targets to poll
+     * @throws MisfireException if a line of the target list is invalid or repeats label and URL of another
+     */
+    private List<PollTarget> parseTargets(String targetList, JRPInputConfig config) throws MisfireException {
+        List<PollTarget> result = Lists.newArrayList();
+        Set<String> labelUrls = new HashSet<>();
+        if (StringUtils.isBlank(targetList)) {
+            if (StringUtils.isNotEmpty(config.getUrl())) {
+                result.add(new PollTarget(config.getLabel(), config.getUrl(),
+                        config.getExecutionInterval(), config.getIntervalUnit()));
+            }
+            return result;
+        }
+        for (String line : targetList.split("\\r?\\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String tokens[] = line.split("\\|");
+            try {
+                String label = tokens[0].trim();
+                String url = tokens.length > 1 ? tokens[1].trim() : "";
+                if (HttpUrl.parse(url) == null) {
+                    throw new IllegalArgumentException("invalid URL <" + url + ">");
+                }
+                if (!labelUrls.add(label + "|" + url)) {
+                    // metrics and stored positions are kept per label and URL
+                    throw new IllegalArgumentException("label and URL already used by another target");
+                }
+                int interval = StringUtils.isNotBlank(token(tokens, 2))
+                        ? Integer.parseInt(tokens[2].trim()) : config.getExecutionInterval();
+                TimeUnit unit = StringUtils.isNotBlank(token(tokens, 3))
+                        ? TimeUnit.valueOf(tokens[3].trim().toUpperCase(Locale.ENGLISH))
+                        : config.getIntervalUnit();
+                PollTarget target = new PollTarget(label, url, interval, unit);
+                if (StringUtils.isNotBlank(token(tokens, 4))) {
+                    target.setPriority(Integer.parseInt(tokens[4].trim()));
+                }
+                result.add(target);
+            } catch (IllegalArgumentException e) {
+                throw new MisfireException("Invalid target line <" + line + ">: " + e.getMessage(), e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compile the include, exclude and rename rules of the element fields
+     * @return The projection, or null if no rules are configured
+     */
+    private static FieldProjection parseProjection(Configuration configuration) throws MisfireException {
+        Set<String> includes = parseFieldList(configuration.getString(CK_CONFIG_INCLUDE_FIELDS));
+        Set<String> excludes = parseFieldList(configuration.getString(CK_CONFIG_EXCLUDE_FIELDS));
+        boolean flatten = configuration.getBoolean(CK_CONFIG_FLATTEN, false);
+        Map<String, String> renames = new HashMap<>();
+        String renameList = configuration.getString(CK_CONFIG_RENAME_FIELDS);
+        if (StringUtils.isNotBlank(renameList)) {
+            for (String rename : renameList.split(",")) {
+                if (StringUtils.isBlank(rename)) {
+                    continue;
+                }
+                String[] names = rename.split("=", 2);
+                if (names.length != 2) {
+                    throw new MisfireException("Invalid field rename <" + rename.trim() + ">, expected path=name.");
+                }
+                renames.put(names[0].trim(), names[1].trim());
+            }
+        }
+        if (includes == null && excludes == null && renames.isEmpty() && !flatten) {
+            return null;
+        }
+        try {
+            return FieldProjection.compile(includes != null ? includes : Collections.emptySet(),
+                    excludes != null ? excludes : Collections.emptySet(), renames, flatten);
+        } catch (IllegalArgumentException e) {
+            throw new MisfireException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param key The config key of a dropdown field
+     * @param type The enum the values of the field are taken from
+     * @param defaultValue The value if none is configured
+     * @return The configured constant
+     * @throws MisfireException if the value is not a constant of the enum
+     */
+    private <E extends Enum<E>> E parseEnum(String key, Class<E> type, E defaultValue) throws MisfireException {
+        String value = configuration.getString(key);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim());
+        } catch (IllegalArgumentException e) {
+            throw new MisfireException("Invalid value <" + value + "> of " + key + ", expected one of "
+                    + Arrays.toString(type.getEnumConstants()) + ".", e);
+        }
+    }
+
+    /**
+     * @param key The config key of a text field holding numbers, e.g. "5,60,1"
+     * @param separator The separator of the numbers
+     * @param format The expected format, for the error message
+     * @param defaults The default of each number, also used for omitted or empty numbers
+     * @return The numbers, or null if the field is empty
+     * @throws MisfireException if the value has too many or invalid numbers
+     */
+    private int[] parseNumbers(String key, String separator, String format, int... defaults) throws MisfireException {
+        String value = configuration.getString(key);
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        String[] tokens = value.trim().split(Pattern.quote(separator), -1);
+        int[] numbers = defaults.clone();
+        try {
+            if (tokens.length > numbers.length) {
+                throw new NumberFormatException("too many numbers");
+            }
+            for (int i = 0; i < tokens.length; i++) {
+                if (StringUtils.isNotBlank(tokens[i])) {
+                    numbers[i] = Integer.parseInt(tokens[i].trim());
+                    if (numbers[i] < 0) {
+                        throw new NumberFormatException("negative number");
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new MisfireException("Invalid value <" + value + "> of " + key + ", expected " + format + ".", e);
+        }
+        return numbers;
+    }
+
+    private static String token(String[] tokens, int index) {
+        return tokens.length > index ? tokens[index] : null;
+    }
+
+    /**
+     * @param fieldList Comma separated field names
+     * @return The field names, or null if none are given
+     */
+    private static Set<String> parseFieldList(String fieldList) {
+        if (StringUtils.isBlank(fieldList)) {
+            return null;
+        }
+        Set<String> fields = new HashSet<>();
+        for (String field : fieldList.split(",")) {
+            if (StringUtils.isNotBlank(field)) {
+                fields.add(field.trim());
+            }
+        }
+        return fields.isEmpty() ? null : fields;
+    }
+
     /**
      * Prepare the HttpClient builder - set basic auth,
      * proxy, timeouts, ...
      * @param configuration The JRPInputConfig holding the config values
      */
     private void configBuilder (JRPInputConfig configuration) {
-        // set timeout
+        // set timeouts, the call timeout is enforced by the monitor tasks
         if (configuration.getTimeout() > 0) {
             httpClientBuilder.connectTimeout(configuration.getTimeout(), configuration.getTimeoutUnit());
         }
+        if (configuration.getReadTimeout() > 0) {
+            httpClientBuilder.readTimeout(configuration.getReadTimeout(), configuration.getTimeoutUnit());
+        }
+        if (configuration.getWriteTimeout() > 0) {
+            httpClientBuilder.writeTimeout(configuration.getWriteTimeout(), configuration.getTimeoutUnit());
+        }
+        // an own pool keeps enough idle connections for many targets, the server's pool is shared with everything else
+        if (configuration.getMaxIdleConnections() > 0) {
+            connectionPool = new ConnectionPool(configuration.getMaxIdleConnections(),
+                    Math.max(1, configuration.getKeepAlive()), TimeUnit.SECONDS);
+            httpClientBuilder.connectionPool(connectionPool);
+        }
+        switch (configuration.getHttpProtocol()) {
+            case HTTP_1_1:
+                httpClientBuilder.protocols(Collections.singletonList(Protocol.HTTP_1_1));
+                break;
+            case H2_PRIOR_KNOWLEDGE:
+                // all requests to a host are multiplexed over one connection
+                httpClientBuilder.protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+                break;
+            default:
+                break;
+        }
         // basic auth
         httpClientBuilder.addInterceptor(new BasicAuthInterceptor(configuration.getUsername(), configuration.getPassword()));
         // set proxy
@@ -149,151 +526,115 @@ public class JRPInputTransport implements Transport {
                     new InetSocketAddress(proxyUri.getHost(), proxyUri.getPort()));
             httpClientBuilder.proxy(proxy);
         }
+        // async requests get their own dispatcher to cap in-flight calls of this input
+        if (configuration.getExecutionMode() == PollScheduler.ExecutionMode.ASYNC) {
+            dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(Math.max(1, configuration.getMaxInFlight()));
+            dispatcher.setMaxRequestsPerHost(Math.max(1, configuration.getMaxInFlightPerHost()));
+            httpClientBuilder.dispatcher(dispatcher);
+        }
+        // resolve through the cache shared by the inputs of this node
+        if (configuration.isDnsCache()) {
+            httpClientBuilder.dns(cachingDns.forInput(metrics, TimeUnit.SECONDS.toMillis(configuration.getDnsCacheTtl())));
+        }
+        // timings are only collected for requests tagged with a CallTimings
+        if (configuration.isCallTimings()) {
+            httpClientBuilder.eventListenerFactory(CallTimings.FACTORY);
+        }
         LOGGER.debug("HttpClient Builder configured.");
         this.httpClient = httpClientBuilder.build();
+        metrics.connectionPool(httpClient.connectionPool());
     }
 
     @Override
-    public void stop() {
+    protected void doStop() {
+
+        if (sharding != null) {
+            sharding.stop();
+            sharding = null;
+        }
+
+        if (pollScheduler != null) {
+            pollScheduler.shutdown();
+        }
 
-        if (future != null) {
-            future.cancel(true);
+        if (dispatcher != null) {
+            dispatcher.cancelAll();
+            dispatcher.executorService().shutdown();
         }
 
-        if (executorService != null) {
-            executorService.shutdownNow();
+        if (connectionPool != null) {
+            connectionPool.evictAll();
+            connectionPool = null;
         }
+
+        metrics.unregisterTargets();
     }
 
     /**
-     * Start threaded monitor task
+     * Start threaded monitor tasks for all targets, sharing one scheduler
+     * and fetch pool
      * @param config The JRPInputConfig holding the config values
      */
     private void startMonitoring(JRPInputConfig config) {
-        executorService = Executors.newSingleThreadScheduledExecutor();
-        long initalDelayMs = TimeUnit.MILLISECONDS.convert(Math.round(Math.random() * 60), TimeUnit.SECONDS);
-        long executionIntervalMs = TimeUnit.MILLISECONDS.convert(config.getExecutionInterval(), config.getIntervalUnit());
-        LOGGER.info("startMonitoring, initalDelayMs: " + initalDelayMs + " executionIntervalMs:" + executionIntervalMs);
-        future = executorService.scheduleAtFixedRate(new MonitorTask(config, messageInput, httpClient), initalDelayMs,
-                executionIntervalMs, TimeUnit.MILLISECONDS);
+        int poolSize = Math.min(Math.max(1, config.getFetchPoolSize()), targets.size());
+        LOGGER.info("startMonitoring, targets: " + targets.size() + " executionMode: " + config.getExecutionMode()
+                + " fetchPoolSize: " + poolSize + " overrunPolicy: " + config.getOverrunPolicy());
+        // journal, processing state and publish rate only hold back polls if enabled
+        Backpressure backpressure = config.isThrottlingAllowed() || config.getMaxMessagesPerSecond() > 0
+                ? new Backpressure(this::isThrottled, config.isThrottlingAllowed() ? serverStatus : null,
+                        metrics, config.getMaxMessagesPerSecond())
+                : null;
+        boolean incremental = config.getMaxPages() > 1 || config.getWatermarkField() != null;
+        WatermarkStore watermarkStore = new WatermarkStore(incremental && mongoConnection != null
+                ? mongoConnection.getMongoDatabase().getCollection(WatermarkStore.COLLECTION) : null,
+                messageInput.getId());
+        if (incremental) {
+            watermarkStore.loadAll(targets, inputService != null
+                    ? inputService.all().stream().map(Input::getId).collect(Collectors.toList()) : null);
+        }
+        if (config.isSharded()) {
+            // a target taken over continues at the position its previous node saved
+            sharding = new TargetSharding(new NodeServiceMembership(nodeService, nodeId), targets, metrics,
+                    incremental ? watermarkStore::load : null);
+            sharding.start(messageInput.getId());
+        }
+        pollScheduler = new PollScheduler(messageInput.getId(), poolSize, config.getMaxInFlight(),
+                config.getExecutionMode(), config.getOverrunPolicy(), metrics, backpressure, sharding);
+        for (PollTarget target : targets) {
+            if (config.getBreakerFailures() > 0) {
+                target.setCircuitBreaker(new CircuitBreaker(config.getBreakerFailures(),
+                        TimeUnit.SECONDS.toMillis(config.getBreakerOpenTime()), config.getBreakerProbes()));
+            }
+            target.setMetrics(metrics.registerTarget(messageInput.getUniqueReadableId(), target));
+            target.setTail(config.isTail());
+            if (config.isDedup()) {
+                target.setDedupCache(new FingerprintCache(config.getDedupCapacity()));
+            }
+            if (config.getRateFields() != null || config.getRatePattern() != null || config.isDropUnchanged()) {
+                target.setCounterRates(new CounterRates(config.getRateFields(), config.getRatePattern(),
+                        config.isDropUnchanged()));
+            }
+            if (config.isAdaptiveInterval()) {
+                long intervalMs = target.getExecutionIntervalMs();
+                long minMs = config.getMinInterval() > 0
+                        ? TimeUnit.MILLISECONDS.convert(config.getMinInterval(), config.getIntervalUnit()) : intervalMs;
+                long maxMs = config.getMaxInterval() > 0
+                        ? TimeUnit.MILLISECONDS.convert(config.getMaxInterval(), config.getIntervalUnit()) : intervalMs * 10;
+                target.setAdaptiveInterval(new AdaptiveInterval(intervalMs, minMs, maxMs));
+            }
+            MonitorTask task = new MonitorTask(target, config, messageInput, httpClient, metrics,
+                    incremental ? watermarkStore : null);
+            if (config.isSharedFetch()) {
+                task.setFetchRegistry(fetchRegistry);
+            }
+            pollScheduler.schedule(task);
+        }
     }
 
     @Override
     public MetricSet getMetricSet() {
-        return null;
-    }
-
-    /**
-     * Internal class doing the heavy work
-     */
-    private static class MonitorTask implements Runnable {
-        private JRPInputConfig config;
-        private MessageInput messageInput;
-        private ObjectMapper mapper;
-        private OkHttpClient httpClient;
-
-        public MonitorTask(JRPInputConfig config, MessageInput messageInput, OkHttpClient okhttpClient) {
-            this.config = config;
-            this.messageInput = messageInput;
-            this.mapper = new ObjectMapper();
-            this.httpClient = okhttpClient;
-        }
-
-        @Override
-        public void run() {
-            //send to http server
-            try {
-
-                long startTime = System.currentTimeMillis();
-                long time;
-                Map<String, Object> eventdata = Maps.newHashMap();
-                eventdata.put("_jrp_input_url", config.getUrl());
-                eventdata.put("_label", config.getLabel());
-                try {
-                    LOGGER.debug("Running new request for URL {}", config.getUrl());
-                    // set headers
-                    final Headers.Builder headersBuilder = new Headers.Builder()
-                            .add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
-                    if (config.getRequestHeadersToSend() != null) {
-                        for (String header : config.getRequestHeadersToSend()) {
-                            String tokens[] = header.split(":");
-                            headersBuilder.set(tokens[0], tokens[1]);
-                        }
-                    }
-                    Headers headers = headersBuilder.build();
-                    LOGGER.debug("Added custom headers to request: {}", headers.toString());
-                    // construct Request
-                    final okhttp3.Request request = new okhttp3.Request.Builder()
-                            .get()
-                            .url(config.getUrl())
-                            .headers(headers)
-                            .build();
-                    // get response
-                    final Response response = httpClient.newCall(request).execute();
-
-                    long endTime = System.currentTimeMillis();
-                    time = endTime - startTime;
-
-                    eventdata.put("host", response.request().url().host());
-                    eventdata.put("_jrp_input_status", response.code());
-                    eventdata.put("_jrp_input_statusLine", response.message());
-                    String responseBodyStr = new String(response.body().bytes());
-                    eventdata.put("_jrp_input_responseSize", responseBodyStr.length());
-                    if (config.isLogResponseBody()) {
-                        eventdata.put("full_message", responseBodyStr);
-                    }
-                    if (config.getResponseHeadersToRecord() != null) {
-                        for (String header : config.getResponseHeadersToRecord()) {
-                            eventdata.put("_" + header, response.header(header));
-                        }
-                    }
-
-                    // get JSON from response body and fill eventdata!
-                    String json = responseBodyStr;
-                    // TODO use JsonPath to get custom root element (defined in config) so that an array of messages could be parsed
-                    // Object document = Configuration.defaultConfiguration().jsonProvider().parse(json);
-                    // ReadContext ctx = JsonPath.parse(json);
-                    // String version = ctx.read("$.version");
-
-                    Map<String, Object> map = mapper.readValue(json, new TypeReference<Map<String,Object>>(){});
-                    for (Map.Entry<String, Object> entry : map.entrySet()) {
-                        String key = entry.getKey();
-                        Object value = entry.getValue();
-                        LOGGER.debug("Storing field <{}> with value <{}>.", key, value);
-                        eventdata.put(key, value);
-                    }
-                } catch (IOException e) {
-                    eventdata.put("host", new URL(config.getUrl()).getHost());
-                    eventdata.put("short_message", "Request failed :" + e.getMessage());
-                    eventdata.put("_jrp_input_responseSize", 0);
-                    long endTime = System.currentTimeMillis();
-                    time = endTime - startTime;
-                    //In case of connection timeout we get an execution exception with root cause as timeoutexception
-                    if (e.getCause() instanceof TimeoutException) {
-                        LOGGER.warn("Timeout while executing request for URL " + config.getUrl(), e);
-                        eventdata.put("_jrp_input_status", 998);
-                    } else if (e.getCause() instanceof ConnectException) {
-                        //In case of connect exception we get an execution exception with root cause as connectexception
-                        LOGGER.warn("Exception while executing request for URL " + config.getUrl(), e);
-                        eventdata.put("_jrp_input_status", 999);
-                    } else {
-                        //Any other exception..
-                        LOGGER.warn("Exception while executing request for URL " + config.getUrl(), e);
-                        eventdata.put("_jrp_input_status", 997);
-                    }
-                }
-                eventdata.put("_jrp_input_responseTime", time);
-
-                //publish to graylog server
-                ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-                mapper.writeValue(byteStream, eventdata);
-                messageInput.processRawMessage(new RawMessage(byteStream.toByteArray()));
-                byteStream.close();
-
-            } catch (IOException e) {
-                LOGGER.error("Exception while executing request for URL " + config.getUrl(), e);
-            }
-        }
+        return metrics.getMetricSet();
     }
 
     @FactoryClass
@@ -308,18 +649,33 @@ public class JRPInputTransport implements Transport {
     }
 
     @ConfigClass
-    public static class Config implements Transport.Config {
+    public static class Config extends ThrottleableTransport.Config {
         @Override
         public ConfigurationRequest getRequestedConfiguration() {
-            final ConfigurationRequest cr = new ConfigurationRequest();
+            final ConfigurationRequest cr = super.getRequestedConfiguration();
             cr.addField(new TextField(CK_CONFIG_URL,
                     "URL to call",
                     "",
-                    ""));
+                    "Single URL to poll, ignored if a target list is given",
+                    ConfigurationField.Optional.OPTIONAL));
             cr.addField(new TextField(CK_CONFIG_LABEL,
                     "Label",
                     "",
-                    "Label to identify this request"));
+                    "Label to identify this request",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new TextField(CK_CONFIG_TARGETS,
+                    "Target list",
+                    "",
+                    "Poll many URLs with this input, one target per line: label|URL[|interval[|interval unit[|priority]]]. For example: shop-db|https://shop/status.php|30|SECONDS",
+                    ConfigurationField.Optional.OPTIONAL,
+                    TextField.Attribute.TEXTAREA));
+
+            cr.addField(new NumberField(CK_CONFIG_FETCH_POOL_SIZE,
+                    "Fetch pool size",
+                    1,
+                    "Number of threads shared by all targets of this input to run requests",
+                    ConfigurationField.Optional.OPTIONAL));
 
             cr.addField(new TextField(CK_CONFIG_HEADERS_TO_SEND,
                     "Additional HTTP headers",
@@ -339,6 +695,64 @@ public class JRPInputTransport implements Transport {
                     ConfigurationField.Optional.OPTIONAL,
                     TextField.Attribute.IS_PASSWORD));
 
+            cr.addField(new DropdownField(
+                    CK_CONFIG_EXECUTION_MODE,
+                    "Execution mode",
+                    PollScheduler.ExecutionMode.POOLED.name(),
+                    ImmutableMap.of(
+                            PollScheduler.ExecutionMode.POOLED.name(), "Blocking requests on the fetch pool",
+                            PollScheduler.ExecutionMode.ASYNC.name(), "Asynchronous requests",
+                            PollScheduler.ExecutionMode.VIRTUAL.name(), "Blocking requests on virtual threads (Java 21+)"),
+                    "Asynchronous requests and virtual threads do not block a fetch pool thread while waiting for slow endpoints",
+                    ConfigurationField.Optional.OPTIONAL
+            ));
+
+            cr.addField(new NumberField(CK_CONFIG_MAX_IN_FLIGHT,
+                    "Max. requests in flight",
+                    64,
+                    "Asynchronous and virtual thread modes only: maximum number of concurrent requests of this input",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new NumberField(CK_CONFIG_MAX_IN_FLIGHT_PER_HOST,
+                    "Max. requests in flight per host",
+                    5,
+                    "Asynchronous mode only: maximum number of concurrent requests of this input to the same host",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new DropdownField(
+                    CK_CONFIG_OVERRUN_POLICY,
+                    "Overrun policy",
+                    PollScheduler.OverrunPolicy.COALESCE.name(),
+                    ImmutableMap.of(
+                            PollScheduler.OverrunPolicy.SKIP.name(), "Skip the tick",
+                            PollScheduler.OverrunPolicy.COALESCE.name(), "Run once more when the request finishes",
+                            PollScheduler.OverrunPolicy.QUEUE.name(), "Run all missed ticks"),
+                    "What to do if a target is due while its previous request is still running",
+                    ConfigurationField.Optional.OPTIONAL
+            ));
+
+            cr.addField(new BooleanField(CK_CONFIG_SHARDED,
+                    "Shard targets across nodes",
+                    false,
+                    "Global inputs only, a local input with this setting fails to start: every target is polled by one of the active Graylog nodes instead of all of them"));
+
+            cr.addField(new NumberField(CK_CONFIG_SHARED_FETCH,
+                    "Share requests with other inputs",
+                    -1,
+                    "Inputs of this node requesting the same URL with the same headers and credentials share one request and response. How old a shared response may be, in ms, at most 60000, for example 1000. 0: only share requests in flight, -1: disabled",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new BooleanField(CK_CONFIG_CALL_TIMINGS,
+                    "Record request phase timings",
+                    false,
+                    "Add DNS, connect, TLS, time to first byte and body transfer times and connection reuse to the messages and metrics"));
+
+            cr.addField(new NumberField(CK_CONFIG_DNS_CACHE,
+                    "Cache DNS lookups",
+                    0,
+                    "Resolve host names through a cache shared by the inputs of this node, refreshed in the background and used for a while if the resolver fails. How long cached addresses are used, in s, for example 60. 0: disabled",
+                    ConfigurationField.Optional.OPTIONAL));
+
             cr.addField(new NumberField(CK_CONFIG_INTERVAL,
                     "Interval",
                     1,
@@ -359,6 +773,24 @@ public class JRPInputTransport implements Transport {
             ));
 
 
+            cr.addField(new TextField(CK_CONFIG_ADAPTIVE_INTERVAL,
+                    "Adaptive interval",
+                    "",
+                    "Poll more often while responses change, back off after failures and 429/503 responses. min-max in the interval time unit, for example 10-600, either may be left out: the interval and ten times the interval. Empty: fixed interval",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new TextField(CK_CONFIG_BREAKER,
+                    "Circuit breaker",
+                    "",
+                    "Stop polling a target after consecutive failed requests. failures[,open time in s[,probes]], for example 5,60,1: probe after 60 s, close after 1 successful probe. Empty or 0: disabled",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new NumberField(CK_CONFIG_MAX_MESSAGES_PER_SECOND,
+                    "Max. messages per second",
+                    0,
+                    "Defer polls while this input publishes more messages per second. 0: no limit",
+                    ConfigurationField.Optional.OPTIONAL));
+
             cr.addField(new NumberField(CK_CONFIG_TIMEOUT,
                     "Timeout",
                     20,
@@ -373,6 +805,48 @@ public class JRPInputTransport implements Transport {
                     ConfigurationField.Optional.NOT_OPTIONAL
             ));
 
+            cr.addField(new NumberField(CK_CONFIG_READ_TIMEOUT,
+                    "Read timeout",
+                    0,
+                    "Maximum time to wait for data from the target, in the timeout unit. 0: default of the Graylog HTTP client",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new NumberField(CK_CONFIG_WRITE_TIMEOUT,
+                    "Write timeout",
+                    0,
+                    "Maximum time to wait while sending to the target, in the timeout unit. 0: default of the Graylog HTTP client",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new NumberField(CK_CONFIG_CALL_TIMEOUT,
+                    "Call timeout",
+                    0,
+                    "Maximum time of a whole request including the response body, in the timeout unit. 0: no limit, ignored when tailing a stream",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new NumberField(CK_CONFIG_MAX_IDLE_CONNECTIONS,
+                    "Max. idle connections",
+                    0,
+                    "Idle connections kept by a connection pool of this input. 0: use the connection pool of the Graylog HTTP client, which keeps 5",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new NumberField(CK_CONFIG_KEEP_ALIVE,
+                    "Keep-alive",
+                    300,
+                    "How long idle connections of the input's own connection pool are kept, in s",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new DropdownField(
+                    CK_CONFIG_HTTP_PROTOCOL,
+                    "HTTP protocol",
+                    JRPInputConfig.HttpProtocol.DEFAULT.name(),
+                    ImmutableMap.of(
+                            JRPInputConfig.HttpProtocol.DEFAULT.name(), "HTTP/2 if offered via TLS, else HTTP/1.1",
+                            JRPInputConfig.HttpProtocol.HTTP_1_1.name(), "HTTP/1.1 only",
+                            JRPInputConfig.HttpProtocol.H2_PRIOR_KNOWLEDGE.name(), "HTTP/2 without TLS (h2c prior knowledge)"),
+                    "With HTTP/2 all requests to a host share one connection",
+                    ConfigurationField.Optional.OPTIONAL
+            ));
+
 
             cr.addField(new TextField(CK_CONFIG_HTTP_PROXY,
                     "HTTP Proxy URI",
@@ -387,11 +861,149 @@ public class JRPInputTransport implements Transport {
                     "Comma separated response headers to log. For example: Accept,Server,Expires",
                     ConfigurationField.Optional.OPTIONAL));
 
+            cr.addField(new TextField(CK_CONFIG_ROOT_PATH,
+                    "Root path",
+                    "",
+                    "JsonPath of the element(s) to publish, every match becomes its own message. For example: $.events[*]",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new NumberField(CK_CONFIG_MAX_PAGES,
+                    "Max. pages per poll",
+                    1,
+                    "Follow next page links or cursors up to this many pages per poll, the next poll continues where this one stopped",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new TextField(CK_CONFIG_NEXT_PAGE_PATH,
+                    "Next page path",
+                    "",
+                    "JsonPath of the next page link or cursor in the body, requires a root path. For example: $.next. Empty: use the Link header",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new TextField(CK_CONFIG_CURSOR_PARAM,
+                    "Cursor parameter",
+                    "",
+                    "Query parameter the cursor is sent in. Empty: the next page value is a link",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new TextField(CK_CONFIG_WATERMARK_FIELD,
+                    "Watermark field",
+                    "",
+                    "Field of the published elements holding a timestamp or ID, the highest value ingested is persisted",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new TextField(CK_CONFIG_WATERMARK_PARAM,
+                    "Watermark parameter",
+                    "",
+                    "Query parameter the watermark is sent in. For example: since",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new NumberField(CK_CONFIG_DEDUP,
+                    "Drop duplicate records",
+                    0,
+                    "Drop records which were already published by an earlier poll of the same target. Records remembered per target, each takes up to 57 bytes, for example 4096. 0: disabled",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new TextField(CK_CONFIG_DEDUP_FIELDS,
+                    "Deduplication key fields",
+                    "",
+                    "Comma separated fields identifying a record, for example: id. Empty: compare all fields of the record",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new TextField(CK_CONFIG_INCLUDE_FIELDS,
+                    "Include fields",
+                    "",
+                    "Comma separated paths of the element fields to keep, for example: host,stats.reads. Empty: keep all fields",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new TextField(CK_CONFIG_EXCLUDE_FIELDS,
+                    "Exclude fields",
+                    "",
+                    "Comma separated paths of element fields to drop without parsing them, for example: debug,stats.*.raw",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new TextField(CK_CONFIG_RENAME_FIELDS,
+                    "Rename fields",
+                    "",
+                    "Comma separated path=name pairs of element fields to publish under another name, for example: stats.reads=reads",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new BooleanField(CK_CONFIG_FLATTEN,
+                    "Flatten nested objects",
+                    false,
+                    "Publish the fields of nested objects as parent_child fields instead of one JSON value"));
+
+            cr.addField(new TextField(CK_CONFIG_RATE_FIELDS,
+                    "Counter rate fields",
+                    "",
+                    "Comma separated counter fields to publish the per second rate of as <field>_rate, for example: Innodb_buffer_pool_reads",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new TextField(CK_CONFIG_RATE_PATTERN,
+                    "Counter rate pattern",
+                    "",
+                    "Regular expression matching further counter fields to publish rates for, for example: Innodb_.*_reads",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new BooleanField(CK_CONFIG_DROP_UNCHANGED,
+                    "Drop unchanged fields",
+                    false,
+                    "Leave out numeric fields whose value is the same as in the previous poll of the target"));
+
+            cr.addField(new BooleanField(CK_CONFIG_PASS_THROUGH,
+                    "Pass-through mode",
+                    false,
+                    "Copy the JSON of the response straight into the message without parsing it into fields first"));
+
+            cr.addField(new BooleanField(CK_CONFIG_NDJSON,
+                    "NDJSON mode",
+                    false,
+                    "Read the body as newline-delimited JSON, every line is published as its own message while the body is still downloading"));
+
+            cr.addField(new BooleanField(CK_CONFIG_TAIL,
+                    "Tail stream",
+                    false,
+                    "NDJSON mode: keep reading until the server closes the stream, then reconnect. A failed connection is retried after the interval"));
+
+            cr.addField(new NumberField(CK_CONFIG_MAX_LINE_LENGTH,
+                    "Max. line length",
+                    1024 * 1024,
+                    "NDJSON mode: longer lines are skipped instead of buffered, in bytes",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new BooleanField(CK_CONFIG_CONDITIONAL_GET,
+                    "Conditional requests",
+                    false,
+                    "Send If-None-Match/If-Modified-Since with the ETag/Last-Modified of the last response and skip 304 responses"));
+
+            cr.addField(new DropdownField(
+                    CK_CONFIG_UNCHANGED_RESPONSES,
+                    "Unchanged responses",
+                    JRPInputConfig.UnchangedResponses.PUBLISH.name(),
+                    ImmutableMap.of(
+                            JRPInputConfig.UnchangedResponses.PUBLISH.name(), "Publish",
+                            JRPInputConfig.UnchangedResponses.SKIP.name(), "Skip",
+                            JRPInputConfig.UnchangedResponses.HEARTBEAT.name(), "Skip, publish a short message without the body"),
+                    "What to do with a response body identical to the last one (compared by hash)",
+                    ConfigurationField.Optional.OPTIONAL
+            ));
+
             cr.addField(new BooleanField(CK_CONFIG_LOG_RESPONSE_BODY,
                     "Log full response body",
                     false,
                     "Select if the complete response body needs to be logged as part of message"));
 
+            cr.addField(new NumberField(CK_CONFIG_MAX_BODY_SIZE,
+                    "Max. body size",
+                    64 * 1024 * 1024,
+                    "Response bodies larger than this are rejected while they are read, in bytes. 0: no limit",
+                    ConfigurationField.Optional.OPTIONAL));
+
+            cr.addField(new NumberField(CK_CONFIG_MAX_FULL_MESSAGE_SIZE,
+                    "Max. full_message size",
+                    32 * 1024,
+                    "The logged response body is truncated to this size, in bytes. 0: no limit",
+                    ConfigurationField.Optional.OPTIONAL));
+
             return cr;
         }
     }
@@ -399,7 +1011,8 @@ public class JRPInputTransport implements Transport {
     public static void main(String args[]) {
         JRPInputConfig config = new JRPInputConfig();
         config.setUrl("https://www.graylog.org");
-        MonitorTask monitorTask = new MonitorTask(config,null, null);
+        PollTarget target = new PollTarget("main", "https://www.graylog.org", 1, TimeUnit.MINUTES);
+        MonitorTask monitorTask = new MonitorTask(target, config, null, null, new JRPMetrics(new MetricRegistry()), null);
         monitorTask.run();
     }
 }
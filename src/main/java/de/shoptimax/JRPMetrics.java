@@ -0,0 +1,361 @@
+package de.shoptimax;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import okhttp3.ConnectionPool;
+import org.apache.commons.lang3.StringUtils;
+import org.graylog2.plugin.LocalMetricRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metrics of one input. Input-wide metrics are created up front and handed
+ * to Graylog through {@link JRPInputTransport#getMetricSet()}, per-target
+ * metrics are registered below the input's name once the targets are known.
+ */
+public class JRPMetrics {
+
+    private final MetricRegistry metricRegistry;
+    private final LocalMetricRegistry localRegistry = new LocalMetricRegistry();
+    private final List<String> targetMetricNames = new CopyOnWriteArrayList<>();
+
+    private final Timer requestLatency;
+    private final Meter bytesReceived;
+    private final Timer parseTime;
+    private final Histogram messagesPerPoll;
+    private final Histogram schedulerLag;
+    private final Histogram tickLag;
+    private final Histogram tickFanOut;
+    private final Map<Integer, Meter> errors;
+    private final Counter breakersOpen;
+    private final Meter breakerRejected;
+    private final Meter messagesPublished;
+    private final Meter deferredTicks;
+    private final Meter oversizeBodies;
+    private final Meter dedupRecords;
+    private final Meter dedupDropped;
+    private final Meter sharedFetches;
+    private final Timer dnsTime;
+    private final Timer connectTime;
+    private final Timer tlsTime;
+    private final Timer firstByteTime;
+    private final Timer bodyTime;
+    private final Meter reusedConnections;
+    private final Meter dnsCacheHits;
+    private final Meter dnsCacheMisses;
+    private final Meter dnsCacheStale;
+    private final AtomicInteger deferredTargets = new AtomicInteger();
+    private final AtomicInteger clusterNodes = new AtomicInteger();
+    private final AtomicInteger ownedTargets = new AtomicInteger();
+    private volatile ConnectionPool connectionPool;
+
+    /**
+     * Metrics of a single target
+     */
+    public static class Target {
+        private final Timer latency;
+        private final Histogram responseSize;
+
+        private Target(Timer latency, Histogram responseSize) {
+            this.latency = latency;
+            this.responseSize = responseSize;
+        }
+    }
+
+    public JRPMetrics(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+        this.requestLatency = localRegistry.timer("requestLatency");
+        this.bytesReceived = localRegistry.meter("bytesReceived");
+        this.parseTime = localRegistry.timer("parseTime");
+        this.messagesPerPoll = localRegistry.histogram("messagesPerPoll");
+        this.schedulerLag = localRegistry.histogram("schedulerLag");
+        this.tickLag = localRegistry.histogram("tickLag");
+        this.tickFanOut = localRegistry.histogram("tickFanOut");
+        this.errors = ImmutableMap.of(
+                997, localRegistry.meter("errors.997"),
+                998, localRegistry.meter("errors.998"),
+                999, localRegistry.meter("errors.999"));
+        this.breakersOpen = localRegistry.counter("breakersOpen");
+        this.breakerRejected = localRegistry.meter("breakerRejected");
+        this.messagesPublished = localRegistry.meter("messagesPublished");
+        this.deferredTicks = localRegistry.meter("deferredTicks");
+        this.oversizeBodies = localRegistry.meter("oversizeBodies");
+        this.dedupRecords = localRegistry.meter("dedupRecords");
+        this.dedupDropped = localRegistry.meter("dedupDropped");
+        this.sharedFetches = localRegistry.meter("sharedFetches");
+        this.dnsTime = localRegistry.timer("dnsTime");
+        this.connectTime = localRegistry.timer("connectTime");
+        this.tlsTime = localRegistry.timer("tlsTime");
+        this.firstByteTime = localRegistry.timer("firstByteTime");
+        this.bodyTime = localRegistry.timer("bodyTime");
+        this.reusedConnections = localRegistry.meter("reusedConnections");
+        this.dnsCacheHits = localRegistry.meter("dnsCacheHits");
+        this.dnsCacheMisses = localRegistry.meter("dnsCacheMisses");
+        this.dnsCacheStale = localRegistry.meter("dnsCacheStale");
+        localRegistry.register("deferredTargets", (Gauge<Integer>) deferredTargets::get);
+        localRegistry.register("clusterNodes", (Gauge<Integer>) clusterNodes::get);
+        localRegistry.register("ownedTargets", (Gauge<Integer>) ownedTargets::get);
+        localRegistry.register("poolConnections", (Gauge<Integer>) () -> {
+            ConnectionPool pool = connectionPool;
+            return pool != null ? pool.connectionCount() : 0;
+        });
+        localRegistry.register("poolIdleConnections", (Gauge<Integer>) () -> {
+            ConnectionPool pool = connectionPool;
+            return pool != null ? pool.idleConnectionCount() : 0;
+        });
+    }
+
+    public MetricSet getMetricSet() {
+        return localRegistry;
+    }
+
+    /**
+     * Register the metrics of a target
+     * @param prefix The name of the input
+     * @param target The target
+     * @return The metrics of the target
+     */
+    public Target registerTarget(String prefix, PollTarget target) {
+        String label = targetName(target);
+        String latencyName = MetricRegistry.name(prefix, "target", label, "latency");
+        String responseSizeName = MetricRegistry.name(prefix, "target", label, "responseSize");
+        targetMetricNames.add(latencyName);
+        targetMetricNames.add(responseSizeName);
+        CircuitBreaker breaker = target.getCircuitBreaker();
+        if (breaker != null) {
+            // 0 closed, 1 half-open, 2 open
+            String breakerName = MetricRegistry.name(prefix, "target", label, "breakerState");
+            metricRegistry.remove(breakerName);
+            metricRegistry.register(breakerName, (Gauge<Integer>) () -> breaker.getState().ordinal());
+            targetMetricNames.add(breakerName);
+        }
+        return new Target(metricRegistry.timer(latencyName), metricRegistry.histogram(responseSizeName));
+    }
+
+    /**
+     * @return The URL of an unlabeled target, else the label followed by a
+     *         hash of the URL, which keeps targets sharing a label apart
+     */
+    static String targetName(PollTarget target) {
+        if (StringUtils.isBlank(target.getLabel())) {
+            return target.getUrl();
+        }
+        return target.getLabel() + "-" + Hashing.murmur3_32().hashString(target.getUrl(), StandardCharsets.UTF_8);
+    }
+
+    public void unregisterTargets() {
+        for (String name : targetMetricNames) {
+            metricRegistry.remove(name);
+        }
+        targetMetricNames.clear();
+    }
+
+    /**
+     * Record the time a poll started later than planned
+     * @param lagMs Actual minus planned start time in ms
+     */
+    public void schedulerLag(long lagMs) {
+        schedulerLag.update(Math.max(0, lagMs));
+    }
+
+    public void breakerOpened() {
+        breakersOpen.inc();
+    }
+
+    public void breakerClosed() {
+        breakersOpen.dec();
+    }
+
+    /**
+     * Count a tick skipped because the circuit breaker of the target is open
+     */
+    public void breakerRejected() {
+        breakerRejected.mark();
+    }
+
+    /**
+     * @return The number of messages published from response bodies so far
+     */
+    public long getPublishedCount() {
+        return messagesPublished.getCount();
+    }
+
+    /**
+     * Count a tick deferred because of backpressure
+     */
+    public void deferredTick() {
+        deferredTicks.mark();
+    }
+
+    /**
+     * @param targets Number of targets waiting for backpressure to go away
+     */
+    public void deferredTargets(int targets) {
+        deferredTargets.set(targets);
+    }
+
+    /**
+     * Record the assignment of targets after a membership change
+     * @param nodes Number of nodes sharing the targets
+     * @param owned Number of targets polled by this node
+     */
+    public void sharding(int nodes, int owned) {
+        clusterNodes.set(nodes);
+        ownedTargets.set(owned);
+    }
+
+    /**
+     * @param connectionPool The connection pool of the input's HTTP client
+     */
+    public void connectionPool(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Record a tick of the timer wheel
+     * @param lagMs How much later than planned the tick ran in ms
+     * @param fired Number of targets due in the tick
+     */
+    public void tick(long lagMs, int fired) {
+        tickLag.update(lagMs);
+        tickFanOut.update(fired);
+    }
+
+    /**
+     * Record a finished request
+     * @param target The metrics of the polled target
+     * @param status The HTTP status or one of the 997/998/999 failure codes
+     * @param timeMs Time taken by the request in ms
+     */
+    public void request(Target target, int status, long timeMs) {
+        requestLatency.update(timeMs, TimeUnit.MILLISECONDS);
+        if (target != null) {
+            target.latency.update(timeMs, TimeUnit.MILLISECONDS);
+        }
+        error(status);
+    }
+
+    /**
+     * Count a failed poll
+     * @param status One of the 997/998/999 failure codes, other codes are ignored
+     */
+    public void error(int status) {
+        Meter errorMeter = errors.get(status);
+        if (errorMeter != null) {
+            errorMeter.mark();
+        }
+    }
+
+    /**
+     * Record a response body rejected for exceeding the maximum body size
+     */
+    public void oversize() {
+        oversizeBodies.mark();
+    }
+
+    /**
+     * Record a record checked for duplicates
+     * @param dropped true if it was published before and dropped
+     */
+    public void dedup(boolean dropped) {
+        dedupRecords.mark();
+        if (dropped) {
+            dedupDropped.mark();
+        }
+    }
+
+    /**
+     * Count a poll served by a request shared with another input
+     */
+    public void sharedFetch() {
+        sharedFetches.mark();
+    }
+
+    /**
+     * Record a host name lookup of the DNS cache
+     * @param hit true if the cached addresses were fresh
+     * @param stale true if the resolver failed and outdated addresses were used
+     */
+    public void dnsLookup(boolean hit, boolean stale) {
+        if (hit) {
+            dnsCacheHits.mark();
+        } else {
+            dnsCacheMisses.mark();
+        }
+        if (stale) {
+            dnsCacheStale.mark();
+        }
+    }
+
+    /**
+     * Record the phases of a finished call, see {@link CallTimings}
+     * @param dnsNs DNS lookup time in ns, -1 for none
+     * @param connectNs TCP connect time in ns, -1 for none
+     * @param tlsNs TLS handshake time in ns, -1 for none
+     * @param firstByteNs Time to the response headers in ns, -1 for none
+     * @param bodyNs Body transfer time in ns, -1 for none
+     * @param reused true if no new connection was opened
+     */
+    public void callTimings(long dnsNs, long connectNs, long tlsNs, long firstByteNs, long bodyNs, boolean reused) {
+        update(dnsTime, dnsNs);
+        update(connectTime, connectNs);
+        update(tlsTime, tlsNs);
+        update(firstByteTime, firstByteNs);
+        update(bodyTime, bodyNs);
+        if (reused) {
+            reusedConnections.mark();
+        }
+    }
+
+    private static void update(Timer timer, long ns) {
+        if (ns >= 0) {
+            timer.update(ns, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Record a read response body
+     * @param target The metrics of the polled target
+     * @param bytes Bytes read from the body
+     * @param messages Messages published from the body
+     * @param parseTimeNs Time taken to read and parse the body in ns
+     */
+    public void body(Target target, long bytes, int messages, long parseTimeNs) {
+        streamed(bytes, messages);
+        bodyRead(target, bytes, messages, parseTimeNs);
+    }
+
+    /**
+     * Record the progress of a body which is still being read
+     */
+    public void streamed(long bytes, int messages) {
+        bytesReceived.mark(bytes);
+        messagesPublished.mark(messages);
+    }
+
+    /**
+     * Record a completely read body whose progress was recorded by {@link #streamed(long, int)}
+     * @param parseTimeNs The time taken, or -1 if the body was read as a stream of unknown length
+     */
+    public void bodyRead(Target target, long bytes, int messages, long parseTimeNs) {
+        messagesPerPoll.update(messages);
+        if (parseTimeNs >= 0) {
+            parseTime.update(parseTimeNs, TimeUnit.NANOSECONDS);
+        }
+        if (target != null) {
+            target.responseSize.update(bytes);
+        }
+    }
+}
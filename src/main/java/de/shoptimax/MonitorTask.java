@@ -0,0 +1,641 @@
+package de.shoptimax;
+
+import com.google.common.collect.Maps;
+import de.shoptimax.util.LimitedSource;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.apache.commons.lang3.StringUtils;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Polls a single target and publishes the received data, the bodies are
+ * turned into messages by a {@link BodyReader}
+ */
+class MonitorTask implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MonitorTask.class.getName());
+
+    private PollTarget target;
+    private JRPInputConfig config;
+    private OkHttpClient httpClient;
+    private JRPMetrics metrics;
+    private WatermarkStore watermarkStore;
+    // null unless requests are shared with other inputs
+    private FetchRegistry fetchRegistry;
+    // pagination state of the current poll
+    private int page;
+    private String nextPage, pollResumeUrl;
+    // outcome of the current poll for the adaptive interval
+    private long pollStart, retryAfterMs;
+    private AdaptiveInterval.Outcome pollOutcome;
+    // phase timings of the current request, null unless enabled
+    private CallTimings callTimings;
+    // deadline of the running call, null unless a call timeout is configured
+    private CallDeadline deadline;
+    // turns the bodies into messages
+    private final BodyReader bodyReader;
+
+    public MonitorTask(PollTarget target, JRPInputConfig config, MessageInput messageInput, OkHttpClient okhttpClient,
+                       JRPMetrics metrics, WatermarkStore watermarkStore) {
+        this.target = target;
+        this.config = config;
+        this.httpClient = okhttpClient;
+        this.metrics = metrics;
+        this.watermarkStore = watermarkStore;
+        this.bodyReader = new BodyReader(target, config, messageInput, metrics);
+    }
+
+    public PollTarget getTarget() {
+        return target;
+    }
+
+    public void setFetchRegistry(FetchRegistry fetchRegistry) {
+        this.fetchRegistry = fetchRegistry;
+    }
+
+    /**
+     * Run the request blocking on the calling thread
+     */
+    @Override
+    public void run() {
+        recordSchedulerLag(System.currentTimeMillis());
+        startPoll();
+        HttpUrl url = firstPageUrl();
+        while (url != null) {
+            //send to http server
+            long startTime = System.currentTimeMillis();
+            Map<String, Object> eventdata = newEventData();
+            try {
+                LOGGER.debug("Running new request for URL {}", url);
+                // get response, closed in any case so the connection goes back to the pool
+                try (Response response = execute(buildRequest(url))) {
+                    readResponse(eventdata, response, startTime);
+                    url = nextPageUrl(url);
+                } catch (IOException e) {
+                    readFailure(eventdata, e, startTime, url);
+                    url = null;
+                }
+            } catch (IOException e) {
+                LOGGER.error("Exception while executing request for URL " + target.getUrl(), e);
+                url = null;
+            } finally {
+                releaseDeadline();
+            }
+        }
+        finishPoll();
+    }
+
+    /**
+     * Enqueue the request with the dispatcher of the HttpClient, the
+     * response is handled on one of the dispatcher threads.
+     * @param whenDone Called after the response has been published
+     */
+    public void runAsync(final Runnable whenDone) {
+        recordSchedulerLag(System.currentTimeMillis());
+        startPoll();
+        enqueuePage(firstPageUrl(), whenDone);
+    }
+
+    private void enqueuePage(final HttpUrl url, final Runnable whenDone) {
+        final long startTime = System.currentTimeMillis();
+        final Map<String, Object> eventdata = newEventData();
+        LOGGER.debug("Enqueuing new request for URL {}", url);
+        enqueue(buildRequest(url), new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                try {
+                    readFailure(eventdata, e, startTime, url);
+                } catch (IOException ex) {
+                    LOGGER.error("Exception while executing request for URL " + target.getUrl(), ex);
+                } finally {
+                    releaseDeadline();
+                    finishPoll();
+                    whenDone.run();
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                HttpUrl next = null;
+                try {
+                    readResponse(eventdata, response, startTime);
+                    next = nextPageUrl(url);
+                } catch (IOException e) {
+                    try {
+                        readFailure(eventdata, e, startTime, url);
+                    } catch (IOException ex) {
+                        LOGGER.error("Exception while executing request for URL " + target.getUrl(), ex);
+                    }
+                } finally {
+                    response.close();
+                    releaseDeadline();
+                    if (next != null) {
+                        enqueueNextPage(next, whenDone);
+                    } else {
+                        finishPoll();
+                        whenDone.run();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Run the request blocking, or wait for the same request of another input
+     */
+    private Response execute(okhttp3.Request request) throws IOException {
+        if (fetchRegistry == null) {
+            return startDeadline(httpClient.newCall(request)).execute();
+        }
+        CompletableFuture<FetchRegistry.Fetched> fetch = fetchRegistry.fetch(fetchKey(request), config.getSharedFetchWindow(),
+                future -> {
+                    try {
+                        future.complete(FetchRegistry.buffer(startDeadline(httpClient.newCall(request)).execute(),
+                                config.getMaxBodySize()));
+                    } catch (IOException e) {
+                        future.completeExceptionally(e);
+                    }
+                }, metrics);
+        // the request of another input is not limited by the timeouts of this one
+        long waitMs = config.getCallTimeout() > 0 ? config.getTimeoutUnit().toMillis(config.getCallTimeout())
+                : (long) httpClient.connectTimeoutMillis() + httpClient.writeTimeoutMillis() + httpClient.readTimeoutMillis();
+        try {
+            return (waitMs > 0 ? fetch.get(waitMs, TimeUnit.MILLISECONDS) : fetch.get()).toResponse(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for shared request");
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("No response to shared request within " + waitMs + " ms");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Enqueue the request, or wait for the same request of another input
+     * without blocking
+     */
+    private void enqueue(okhttp3.Request request, Callback callback) {
+        Call call = httpClient.newCall(request);
+        if (fetchRegistry == null) {
+            enqueue(startDeadline(call), callback);
+            return;
+        }
+        fetchRegistry.fetch(fetchKey(request), config.getSharedFetchWindow(), future -> enqueue(startDeadline(call), new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try {
+                    future.complete(FetchRegistry.buffer(response, config.getMaxBodySize()));
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }), metrics).whenCompleteAsync((fetched, e) -> {
+            // a response reused right away must not be processed on the scheduler thread
+            if (e == null) {
+                try {
+                    callback.onResponse(call, fetched.toResponse(request));
+                } catch (IOException ex) {
+                    LOGGER.error("Exception while executing request for URL " + target.getUrl(), ex);
+                }
+            } else {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                callback.onFailure(call, cause instanceof IOException ? (IOException) cause : new IOException(cause));
+            }
+        }, task -> {
+            try {
+                httpClient.dispatcher().executorService().execute(task);
+            } catch (RejectedExecutionException e) {
+                // the input stopped while the request was running, the target still has to be released
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * Enqueue the call with the dispatcher, failing it if the dispatcher
+     * was shut down because the input stopped
+     */
+    private static void enqueue(Call call, Callback callback) {
+        try {
+            call.enqueue(callback);
+        } catch (RejectedExecutionException e) {
+            callback.onFailure(call, new InterruptedIOException("Input stopped, request not started"));
+        }
+    }
+
+    /**
+     * Limit the time the call may take as a whole, if configured. A tail
+     * never ends, it is only limited by the read timeout.
+     */
+    private Call startDeadline(Call call) {
+        if (config.getCallTimeout() > 0 && !config.isTail()) {
+            deadline = CallDeadline.start(call, config.getTimeoutUnit().toMillis(config.getCallTimeout()));
+        }
+        return call;
+    }
+
+    private void releaseDeadline() {
+        if (deadline != null) {
+            deadline.release();
+            deadline = null;
+        }
+    }
+
+    private String fetchKey(okhttp3.Request request) {
+        return FetchRegistry.key(request, config.getUsername(), config.getPassword(), config.getHttpProxyUri());
+    }
+
+    private void enqueueNextPage(HttpUrl url, Runnable whenDone) {
+        try {
+            enqueuePage(url, whenDone);
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not request next page " + url + " of target " + target, e);
+            finishPoll();
+            whenDone.run();
+        }
+    }
+
+    private void startPoll() {
+        pollStart = System.currentTimeMillis();
+        pollOutcome = AdaptiveInterval.Outcome.UNCHANGED;
+        retryAfterMs = 0;
+        page = 0;
+        nextPage = null;
+        bodyReader.setWatermark(target.getWatermark());
+        pollResumeUrl = null;
+    }
+
+    /**
+     * @return The resume URL of an unfinished poll, else the target URL with the watermark
+     */
+    private HttpUrl firstPageUrl() {
+        if (target.getResumeUrl() != null) {
+            return HttpUrl.get(target.getResumeUrl());
+        }
+        HttpUrl url = HttpUrl.get(target.getUrl());
+        if (config.getWatermarkParam() != null && target.getWatermark() != null) {
+            url = url.newBuilder().setQueryParameter(config.getWatermarkParam(), target.getWatermark()).build();
+        }
+        return url;
+    }
+
+    /**
+     * @param url The URL of the page just read
+     * @return The URL of the next page, or null if the poll is finished
+     */
+    private HttpUrl nextPageUrl(HttpUrl url) {
+        if (StringUtils.isEmpty(nextPage)) {
+            return null;
+        }
+        HttpUrl next = config.getCursorParam() != null
+                ? url.newBuilder().setQueryParameter(config.getCursorParam(), nextPage).build()
+                : url.resolve(nextPage);
+        nextPage = null;
+        if (next == null || next.equals(url)) {
+            return null;
+        }
+        if (++page >= config.getMaxPages()) {
+            // continue with this page next time
+            pollResumeUrl = next.toString();
+            return null;
+        }
+        return next;
+    }
+
+    /**
+     * Store the watermark and resume URL, if they changed, and adapt the
+     * interval of the target to the outcome of the poll
+     */
+    private void finishPoll() {
+        bodyReader.flush();
+        String pollWatermark = bodyReader.getWatermark();
+        if (config.getWatermarkField() != null && pollWatermark != null && !pollWatermark.equals(target.getWatermark())) {
+            pollChanged();
+        }
+        if (target.updatePosition(pollWatermark, pollResumeUrl) && watermarkStore != null) {
+            watermarkStore.save(target);
+        }
+        AdaptiveInterval interval = target.getAdaptiveInterval();
+        if (interval != null) {
+            long delay = interval.update(pollOutcome, retryAfterMs);
+            // failures back off from now, a slow timeout must not eat up the delay
+            long from = pollOutcome == AdaptiveInterval.Outcome.FAILED ? System.currentTimeMillis() : pollStart;
+            target.setNextPollAt(from + delay);
+            LOGGER.debug("Poll of target {} {}, next poll in {} ms", target, pollOutcome, delay);
+        }
+    }
+
+    private void pollChanged() {
+        if (pollOutcome != AdaptiveInterval.Outcome.FAILED) {
+            pollOutcome = AdaptiveInterval.Outcome.CHANGED;
+        }
+    }
+
+    private void pollFailed(long retryAfterMs) {
+        pollOutcome = AdaptiveInterval.Outcome.FAILED;
+        this.retryAfterMs = Math.max(this.retryAfterMs, retryAfterMs);
+    }
+
+    /**
+     * @return The delay requested with Retry-After, in seconds or as HTTP date, in ms
+     */
+    private static long retryAfterMs(Response response) {
+        String retryAfter = response.header(HttpHeaders.RETRY_AFTER);
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate(HttpHeaders.RETRY_AFTER);
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : 0;
+        }
+    }
+
+    private void recordSchedulerLag(long startTime) {
+        // a reconnect of a tail is planned for while the stream was still open
+        if (target.getPlannedStart() > 0 && !config.isTail()) {
+            metrics.schedulerLag(startTime - target.getPlannedStart());
+        }
+    }
+
+    private Map<String, Object> newEventData() {
+        Map<String, Object> eventdata = Maps.newHashMap();
+        eventdata.put("_jrp_input_url", target.getUrl());
+        eventdata.put("_label", target.getLabel());
+        if (config.getMaxPages() > 1) {
+            eventdata.put("_jrp_input_page", page);
+        }
+        return eventdata;
+    }
+
+    private okhttp3.Request buildRequest(HttpUrl url) {
+        // set headers
+        final Headers.Builder headersBuilder = new Headers.Builder()
+                .add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+        if (config.getRequestHeadersToSend() != null) {
+            for (String header : config.getRequestHeadersToSend()) {
+                String tokens[] = header.split(":");
+                headersBuilder.set(tokens[0], tokens[1]);
+            }
+        }
+        // conditional request with the validators of the last response
+        if (config.isConditionalGet() && page == 0) {
+            if (target.getETag() != null) {
+                headersBuilder.set(HttpHeaders.IF_NONE_MATCH, target.getETag());
+            }
+            if (target.getLastModified() != null) {
+                headersBuilder.set(HttpHeaders.IF_MODIFIED_SINCE, target.getLastModified());
+            }
+        }
+        Headers headers = headersBuilder.build();
+        LOGGER.debug("Added custom headers to request: {}", headers.toString());
+        // construct Request
+        okhttp3.Request.Builder requestBuilder = new okhttp3.Request.Builder()
+                .get()
+                .url(url)
+                .headers(headers);
+        if (config.isCallTimings()) {
+            requestBuilder.tag(CallTimings.class, new CallTimings(metrics));
+        }
+        return requestBuilder.build();
+    }
+
+    private void readResponse(Map<String, Object> eventdata, Response response, long startTime) throws IOException {
+        long endTime = System.currentTimeMillis();
+        long time = endTime - startTime;
+
+        int status = response.code();
+        eventdata.put("host", response.request().url().host());
+        eventdata.put("_jrp_input_status", status);
+        eventdata.put("_jrp_input_statusLine", response.message());
+        if (config.getResponseHeadersToRecord() != null) {
+            for (String header : config.getResponseHeadersToRecord()) {
+                eventdata.put("_" + header, response.header(header));
+            }
+        }
+        recordPoll(eventdata, status, time);
+        putCallTimings(eventdata, response.request().tag(CallTimings.class));
+        CircuitBreaker breaker = target.getCircuitBreaker();
+        if (breaker != null && (status >= 500 || status == 429)) {
+            // the endpoint answers, but is not available
+            Map<String, Object> message = Maps.newHashMap(eventdata);
+            message.put("short_message", "Request failed: " + status + " " + response.message());
+            message.put("_jrp_input_responseSize", 0);
+            if (!breakerFailure(message, endTime)) {
+                pollFailed(retryAfterMs(response));
+                return;
+            }
+        } else if (breaker != null && breaker.onSuccess()) {
+            LOGGER.info("Circuit breaker of target {} closed", target);
+            metrics.breakerClosed();
+            Map<String, Object> message = Maps.newHashMap(eventdata);
+            message.put("short_message", "Circuit breaker closed");
+            message.put("_jrp_input_breaker", CircuitBreaker.State.CLOSED.name());
+            message.put("_jrp_input_responseSize", 0);
+            bodyReader.publish(message);
+        }
+        if (status == 429 || status == 503) {
+            pollFailed(retryAfterMs(response));
+        }
+
+        if (config.getMaxPages() > 1 && config.getNextPagePath() == null) {
+            nextPage = linkHeaderNext(response.headers(HttpHeaders.LINK));
+        }
+
+        if (status == 304 && config.isConditionalGet()) {
+            LOGGER.debug("URL {} not modified", target.getUrl());
+            bodyReader.notModified(eventdata);
+            return;
+        }
+
+        readBody(eventdata, response.body());
+        // only remember the validators once the body has been published
+        if (config.isConditionalGet() && response.isSuccessful() && page == 0) {
+            target.setValidators(response.header(HttpHeaders.ETAG), response.header(HttpHeaders.LAST_MODIFIED));
+        }
+    }
+
+    /**
+     * Turn the response body into messages and publish them
+     * @param eventdata The request fields added to every message
+     * @param body The response body
+     * @throws IOException if the body could not be read or parsed
+     */
+    void readBody(Map<String, Object> eventdata, ResponseBody body) throws IOException {
+        if (bodyReader.read(eventdata, body, page, callTimings)) {
+            pollChanged();
+        }
+        if (config.getNextPagePath() != null) {
+            nextPage = bodyReader.getNextPage();
+        }
+    }
+
+    /**
+     * Add the phases of the request up to the response headers. A shared
+     * response has no timings of its own, a reused connection no connect phases.
+     */
+    private void putCallTimings(Map<String, Object> eventdata, CallTimings timings) {
+        callTimings = timings != null && timings.isStarted() ? timings : null;
+        if (callTimings == null) {
+            return;
+        }
+        putMillis(eventdata, "_jrp_input_dnsTime", callTimings.getDnsNs());
+        putMillis(eventdata, "_jrp_input_connectTime", callTimings.getConnectNs());
+        putMillis(eventdata, "_jrp_input_tlsTime", callTimings.getTlsNs());
+        putMillis(eventdata, "_jrp_input_firstByteTime", callTimings.getFirstByteNs());
+        eventdata.put("_jrp_input_connectionReused", callTimings.isReused());
+    }
+
+    /**
+     * Put a duration in ms with µs precision, if there is one
+     */
+    static void putMillis(Map<String, Object> eventdata, String key, long ns) {
+        if (ns >= 0) {
+            eventdata.put(key, Math.round(ns / 1000.0) / 1000.0);
+        }
+    }
+
+    /**
+     * @param links The Link headers of the response
+     * @return The target of the link with rel="next", or null
+     */
+    private static String linkHeaderNext(List<String> links) {
+        for (String header : links) {
+            // <url>; rel="next", <url>; rel="prev"
+            for (String link : header.split(",(?=\\s*<)")) {
+                int start = link.indexOf('<');
+                int end = link.indexOf('>', start);
+                if (start < 0 || end < 0) {
+                    continue;
+                }
+                for (String param : link.substring(end + 1).split(";")) {
+                    String[] tokens = param.trim().split("=", 2);
+                    if (tokens.length == 2 && tokens[0].trim().equalsIgnoreCase("rel")
+                            && Arrays.asList(StringUtils.strip(tokens[1].trim(), "\"").toLowerCase(Locale.ENGLISH).split("\\s+")).contains("next")) {
+                        return link.substring(start + 1, end);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void readFailure(Map<String, Object> eventdata, IOException e, long startTime, HttpUrl url) throws IOException {
+        if (page > 0) {
+            // retry the failed page next time
+            pollResumeUrl = url.toString();
+        }
+        eventdata.put("host", new URL(target.getUrl()).getHost());
+        eventdata.put("short_message", "Request failed :" + e.getMessage());
+        eventdata.put("_jrp_input_responseSize", 0);
+        long endTime = System.currentTimeMillis();
+        long time = endTime - startTime;
+        int status;
+        //In case of connection timeout we get an execution exception with root cause as timeoutexception
+        if (e.getCause() instanceof TimeoutException || e instanceof SocketTimeoutException
+                || (deadline != null && deadline.isExpired())) {
+            LOGGER.warn("Timeout while executing request for URL " + target.getUrl(), e);
+            status = 998;
+        } else if (e.getCause() instanceof ConnectException) {
+            //In case of connect exception we get an execution exception with root cause as connectexception
+            LOGGER.warn("Exception while executing request for URL " + target.getUrl(), e);
+            status = 999;
+        } else {
+            //Any other exception..
+            LOGGER.warn("Exception while executing request for URL " + target.getUrl(), e);
+            status = 997;
+        }
+        eventdata.put("_jrp_input_status", status);
+        if (e instanceof LimitedSource.BodyTooLargeException) {
+            metrics.oversize();
+            eventdata.put("_jrp_input_oversize", true);
+        }
+        pollFailed(0);
+        if (eventdata.containsKey("_jrp_input_responseTime")) {
+            // the poll was already recorded, reading the body failed
+            target.recordFailure();
+            metrics.error(status);
+            eventdata.put("_jrp_input_failures", target.getFailures());
+        } else {
+            recordPoll(eventdata, status, time);
+            if (target.getCircuitBreaker() != null && !breakerFailure(eventdata, endTime)) {
+                return;
+            }
+        }
+        bodyReader.publish(eventdata);
+    }
+
+    /**
+     * Count a failed request in the circuit breaker. Opening the breaker
+     * publishes one message for the outage instead of a failure on every tick.
+     * @param eventdata The failure message, its short message names the failure
+     * @param now The current time in ms
+     * @return true if the poll continues as usual, false if it ends here
+     */
+    private boolean breakerFailure(Map<String, Object> eventdata, long now) throws IOException {
+        CircuitBreaker breaker = target.getCircuitBreaker();
+        boolean wasClosed = breaker.getState() == CircuitBreaker.State.CLOSED;
+        if (breaker.onFailure(now)) {
+            LOGGER.warn("Circuit breaker of target {} opened", target);
+            metrics.breakerOpened();
+            eventdata.put("short_message", "Circuit breaker opened after " + breaker.getFailures()
+                    + " failures: " + eventdata.get("short_message"));
+            eventdata.put("_jrp_input_breaker", CircuitBreaker.State.OPEN.name());
+            bodyReader.publish(eventdata);
+            return false;
+        }
+        if (!wasClosed) {
+            LOGGER.debug("Probe of target {} failed, circuit breaker open again", target);
+            return false;
+        }
+        return true;
+    }
+
+    private void recordPoll(Map<String, Object> eventdata, int status, long time) {
+        eventdata.put("_jrp_input_responseTime", time);
+
+        // per-target stats
+        target.recordPoll(status, time);
+        metrics.request(target.getMetrics(), status, time);
+        eventdata.put("_jrp_input_polls", target.getPolls());
+        eventdata.put("_jrp_input_failures", target.getFailures());
+        eventdata.put("_jrp_input_skippedTicks", target.getSkippedTicks());
+        if (target.getAdaptiveInterval() != null) {
+            eventdata.put("_jrp_input_interval", target.getAdaptiveInterval().getCurrentMs());
+        }
+    }
+
+}
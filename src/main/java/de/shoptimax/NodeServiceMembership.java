@@ -0,0 +1,36 @@
+package de.shoptimax;
+
+import org.graylog2.cluster.Node;
+import org.graylog2.cluster.NodeService;
+import org.graylog2.plugin.system.NodeId;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The Graylog server nodes which sent a heartbeat recently
+ */
+public class NodeServiceMembership implements ClusterMembership {
+
+    private final NodeService nodeService;
+    private final NodeId nodeId;
+
+    public NodeServiceMembership(NodeService nodeService, NodeId nodeId) {
+        this.nodeService = nodeService;
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public String getLocalNodeId() {
+        return nodeId.toString();
+    }
+
+    @Override
+    public Set<String> getActiveNodeIds() {
+        Set<String> nodeIds = new HashSet<>();
+        for (Node node : nodeService.allActive(Node.Type.SERVER).values()) {
+            nodeIds.add(node.getNodeId());
+        }
+        return nodeIds;
+    }
+}
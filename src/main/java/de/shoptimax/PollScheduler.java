@@ -0,0 +1,277 @@
+package de.shoptimax;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.shoptimax.util.TimerWheel;
+import de.shoptimax.util.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Drives all targets of one input with a single timer wheel thread which
+ * hands due polls over to a fixed-size fetch pool, or enqueues them with
+ * the OkHttp dispatcher in async mode, so the number of threads does not
+ * grow with the number of targets. Every target polls at a stable phase
+ * within its interval derived from its URL and label, which spreads the
+ * polls of all inputs evenly and keeps them in place across restarts.
+ */
+public class PollScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PollScheduler.class.getName());
+
+    /**
+     * How requests are executed
+     */
+    public enum ExecutionMode {
+        // blocking requests on the fetch pool
+        POOLED,
+        // non-blocking requests on the OkHttp dispatcher
+        ASYNC,
+        // blocking requests on a virtual thread each, POOLED if the JVM has none
+        VIRTUAL
+    }
+
+    /**
+     * What happens to a tick firing while the previous poll of the same
+     * target is still running
+     */
+    public enum OverrunPolicy {
+        // drop the tick
+        SKIP,
+        // run once more right after the current poll, further ticks are dropped
+        COALESCE,
+        // run all missed ticks one after another
+        QUEUE
+    }
+
+    // resolution of the timer wheel, one wheel round covers 51.2 s
+    private static final long TICK_MS = 100;
+    private static final int WHEEL_SIZE = 512;
+    // deferred polls started per tick once backpressure is gone
+    private static final int RESUME_PER_TICK = 50;
+
+    private final TimerWheel timer;
+    private final ExecutorService fetchPool;
+    // caps the polls running on virtual threads, null otherwise
+    private final Semaphore inFlight;
+    private final ExecutionMode executionMode;
+    private final OverrunPolicy overrunPolicy;
+    private final JRPMetrics metrics;
+    private final Backpressure backpressure;
+    private final TargetSharding sharding;
+
+    /**
+     * A poll deferred because of backpressure
+     */
+    private static class Deferred {
+        private final MonitorTask task;
+        private final long plannedStart;
+
+        private Deferred(MonitorTask task, long plannedStart) {
+            this.task = task;
+            this.plannedStart = plannedStart;
+        }
+    }
+
+    // higher priority first, then in the order the polls were due; only touched by the timer thread
+    private final PriorityQueue<Deferred> deferred = new PriorityQueue<>(
+            Comparator.<Deferred>comparingInt(d -> -d.task.getTarget().getPriority())
+                    .thenComparingLong(d -> d.plannedStart));
+
+    /**
+     * @param maxInFlight Maximum number of polls running at the same time in virtual thread mode
+     * @param backpressure Decides when polls are deferred, null to never defer
+     * @param sharding Decides which targets this node polls, null to poll all
+     */
+    public PollScheduler(String name, int fetchPoolSize, int maxInFlight, ExecutionMode executionMode,
+                         OverrunPolicy overrunPolicy, JRPMetrics metrics, Backpressure backpressure,
+                         TargetSharding sharding) {
+        this.overrunPolicy = overrunPolicy;
+        this.metrics = metrics;
+        this.backpressure = backpressure;
+        this.sharding = sharding;
+        ExecutorService virtualThreads = executionMode == ExecutionMode.VIRTUAL
+                ? VirtualThreads.newExecutor("jrp-" + name + "-fetch-") : null;
+        if (executionMode == ExecutionMode.VIRTUAL && virtualThreads == null) {
+            LOGGER.warn("Virtual threads are not supported by this JVM, falling back to a fetch pool of {} threads",
+                    fetchPoolSize);
+            executionMode = ExecutionMode.POOLED;
+        }
+        this.executionMode = executionMode;
+        if (virtualThreads != null) {
+            this.fetchPool = virtualThreads;
+            this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        } else if (executionMode == ExecutionMode.POOLED) {
+            this.fetchPool = Executors.newFixedThreadPool(Math.max(1, fetchPoolSize), new ThreadFactoryBuilder()
+                    .setNameFormat("jrp-" + name + "-fetch-%d")
+                    .setDaemon(true)
+                    .build());
+            this.inFlight = null;
+        } else {
+            this.fetchPool = null;
+            this.inFlight = null;
+        }
+        // started last, the wheel calls back right away
+        this.timer = new TimerWheel(TICK_MS, WHEEL_SIZE, new ThreadFactoryBuilder()
+                .setNameFormat("jrp-" + name + "-timer")
+                .setDaemon(true)
+                .build(), this::ticked);
+    }
+
+    /**
+     * Schedule a monitor task at the interval of its target, starting at
+     * the phase of the target
+     * @param task The task polling the target
+     */
+    public void schedule(MonitorTask task) {
+        PollTarget target = task.getTarget();
+        long executionIntervalMs = target.getExecutionIntervalMs();
+        long firstDeadline = nextPhase(target, executionIntervalMs, System.currentTimeMillis());
+        LOGGER.debug("Scheduling target {}, first poll: {} executionIntervalMs: {}",
+                target, firstDeadline, executionIntervalMs);
+        AdaptiveInterval adaptiveInterval = target.getAdaptiveInterval();
+        if (adaptiveInterval != null) {
+            // check at the shortest interval whether the target is due
+            target.setNextPollAt(firstDeadline);
+            timer.schedule(firstDeadline, adaptiveInterval.getMinMs(), deadline -> {
+                long now = System.currentTimeMillis();
+                long due = target.getNextPollAt();
+                if (now >= due) {
+                    // replaced by the outcome of the poll once it finishes
+                    target.setNextPollAt(now + adaptiveInterval.getCurrentMs());
+                    tick(task, due);
+                }
+            });
+            return;
+        }
+        timer.schedule(firstDeadline, executionIntervalMs, deadline -> tick(task, deadline));
+    }
+
+    /**
+     * The phase of a target is a hash of its URL and label modulo its
+     * interval, counted from the epoch, so it is the same on every start
+     * @return The first wall clock time after now at the phase of the target
+     */
+    static long nextPhase(PollTarget target, long intervalMs, long now) {
+        if (intervalMs <= 0) {
+            return now;
+        }
+        int hash = Hashing.murmur3_32().hashString(target.getUrl() + "|" + target.getLabel(), StandardCharsets.UTF_8).asInt();
+        long phase = Math.floorMod(hash, intervalMs);
+        return now + Math.floorMod(phase - now, intervalMs);
+    }
+
+    private void tick(MonitorTask task, long plannedStart) {
+        // every node keeps all targets scheduled, so a rebalance takes effect with the next tick
+        if (sharding != null && !sharding.owns(task.getTarget())) {
+            return;
+        }
+        CircuitBreaker breaker = task.getTarget().getCircuitBreaker();
+        if (breaker != null && !breaker.allowRequest(System.currentTimeMillis())) {
+            LOGGER.debug("Circuit breaker of target {} open, skipping tick", task.getTarget());
+            metrics.breakerRejected();
+            return;
+        }
+        // while deferred polls are waiting, new ones queue up behind them
+        if (backpressure != null && (!deferred.isEmpty() || backpressure.isSaturated(System.currentTimeMillis()))) {
+            defer(task, plannedStart);
+            return;
+        }
+        start(task, plannedStart);
+    }
+
+    private void start(MonitorTask task, long plannedStart) {
+        if (task.getTarget().tick(overrunPolicy, plannedStart)) {
+            dispatch(task);
+        } else {
+            LOGGER.debug("Previous poll of target {} still running, overrun policy {}", task.getTarget(), overrunPolicy);
+        }
+    }
+
+    private void defer(MonitorTask task, long plannedStart) {
+        PollTarget target = task.getTarget();
+        metrics.deferredTick();
+        if (!target.isDeferred()) {
+            LOGGER.debug("Backpressure, deferring poll of target {}", target);
+            target.setDeferred(true);
+            deferred.add(new Deferred(task, plannedStart));
+            metrics.deferredTargets(deferred.size());
+        }
+    }
+
+    /**
+     * Called by the timer wheel after every tick, resumes deferred polls
+     * in priority order once Graylog caught up
+     */
+    private void ticked(long lagMs, int fired) {
+        metrics.tick(lagMs, fired);
+        if (deferred.isEmpty() || backpressure.isSaturated(System.currentTimeMillis())) {
+            return;
+        }
+        for (int i = 0; i < RESUME_PER_TICK && !deferred.isEmpty(); i++) {
+            Deferred next = deferred.poll();
+            next.task.getTarget().setDeferred(false);
+            start(next.task, next.plannedStart);
+        }
+        metrics.deferredTargets(deferred.size());
+    }
+
+    private void dispatch(MonitorTask task) {
+        try {
+            if (executionMode == ExecutionMode.ASYNC) {
+                task.runAsync(() -> completed(task));
+            } else if (executionMode == ExecutionMode.VIRTUAL) {
+                // a virtual thread waiting for a permit costs next to nothing, the timer thread never waits
+                fetchPool.execute(() -> {
+                    try {
+                        inFlight.acquire();
+                    } catch (InterruptedException e) {
+                        // shut down
+                        completed(task);
+                        return;
+                    }
+                    try {
+                        task.run();
+                    } finally {
+                        inFlight.release();
+                        completed(task);
+                    }
+                });
+            } else {
+                fetchPool.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        completed(task);
+                    }
+                });
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Scheduler shut down, dropping poll of target {}", task.getTarget());
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not start poll of target " + task.getTarget(), e);
+            completed(task);
+        }
+    }
+
+    private void completed(MonitorTask task) {
+        if (task.getTarget().complete() && !timer.isShutdown()) {
+            dispatch(task);
+        }
+    }
+
+    public void shutdown() {
+        timer.shutdown();
+        if (fetchPool != null) {
+            fetchPool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package de.shoptimax;
+
+import de.shoptimax.util.FingerprintCache;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single endpoint polled by an input, with its own label, interval
+ * and request statistics.
+ */
+public class PollTarget {
+    // upper bound of ticks kept by the QUEUE overrun policy
+    private static final int MAX_QUEUED_TICKS = 10;
+
+    private final String label, url;
+    private final int executionInterval;
+    private final TimeUnit intervalUnit;
+    private int priority;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastResponseTime;
+    private volatile int lastStatus;
+
+    private final AtomicBoolean inFlight = new AtomicBoolean();
+    private final AtomicInteger pendingTicks = new AtomicInteger();
+    private final AtomicLong skippedTicks = new AtomicLong();
+    private volatile long plannedStart, deferredStart;
+
+    private JRPMetrics.Target metrics;
+
+    // validators and body hash of the last published response
+    private volatile String eTag, lastModified;
+    private volatile long bodyHash;
+    private volatile boolean hasBodyHash;
+
+    // highest value ingested and the page to continue with, see WatermarkStore
+    private volatile String watermark, resumeUrl;
+
+    // null unless the interval is adaptive
+    private AdaptiveInterval adaptiveInterval;
+    private volatile long nextPollAt;
+
+    // waiting for backpressure to go away, only touched by the timer thread
+    private boolean deferred;
+
+    // null unless the circuit breaker is enabled
+    private CircuitBreaker circuitBreaker;
+
+    // a poll reads a stream until the server closes it
+    private volatile boolean tail;
+
+    // fingerprints of published records, null unless deduplication is enabled
+    private FingerprintCache dedupCache;
+
+    // previous samples of numeric fields, null unless rates or dropping unchanged fields are enabled
+    private CounterRates counterRates;
+
+    public PollTarget(String label, String url, int executionInterval, TimeUnit intervalUnit) {
+        this.label = label;
+        this.url = url;
+        this.executionInterval = executionInterval;
+        this.intervalUnit = intervalUnit;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getExecutionInterval() {
+        return executionInterval;
+    }
+
+    public TimeUnit getIntervalUnit() {
+        return intervalUnit;
+    }
+
+    /**
+     * @return The priority of polls deferred by backpressure, higher first
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    public long getExecutionIntervalMs() {
+        return TimeUnit.MILLISECONDS.convert(executionInterval, intervalUnit);
+    }
+
+    /**
+     * Record the outcome of a finished poll
+     * @param status The HTTP status or one of the 997/998/999 failure codes
+     * @param responseTime Time taken by the request in ms
+     */
+    public void recordPoll(int status, long responseTime) {
+        polls.incrementAndGet();
+        if (status >= 997) {
+            failures.incrementAndGet();
+        }
+        this.lastStatus = status;
+        this.lastResponseTime = responseTime;
+    }
+
+    /**
+     * Record a failure of a poll which has already been recorded
+     */
+    public void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    /**
+     * Called when the schedule of this target fires. If the previous poll
+     * is still running, the tick is skipped, coalesced or queued according
+     * to the overrun policy.
+     * @param policy The overrun policy of the input
+     * @param plannedStart The time the tick was planned for in ms
+     * @return true if a poll should be started now
+     */
+    public boolean tick(PollScheduler.OverrunPolicy policy, long plannedStart) {
+        if (inFlight.compareAndSet(false, true)) {
+            this.plannedStart = plannedStart;
+            return true;
+        }
+        if (tail) {
+            // the stream is still open, not an overrun: reconnect as soon as it ends
+            if (pendingTicks.compareAndSet(0, 1)) {
+                deferredStart = plannedStart;
+            }
+            return false;
+        }
+        switch (policy) {
+            case COALESCE:
+                if (pendingTicks.compareAndSet(0, 1)) {
+                    deferredStart = plannedStart;
+                } else {
+                    skippedTicks.incrementAndGet();
+                }
+                break;
+            case QUEUE:
+                int pending = pendingTicks.incrementAndGet();
+                if (pending > MAX_QUEUED_TICKS) {
+                    pendingTicks.decrementAndGet();
+                    skippedTicks.incrementAndGet();
+                } else if (pending == 1) {
+                    deferredStart = plannedStart;
+                }
+                break;
+            default:
+                skippedTicks.incrementAndGet();
+        }
+        return false;
+    }
+
+    /**
+     * Called when a poll has finished
+     * @return true if a pending tick should be run right away
+     */
+    public boolean complete() {
+        while (true) {
+            if (pendingTicks.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0) {
+                // deferred polls count their lag from the first deferred tick
+                plannedStart = deferredStart;
+                return true;
+            }
+            inFlight.set(false);
+            // a tick may have been deferred after the check above
+            if (pendingTicks.get() == 0 || !inFlight.compareAndSet(false, true)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return The time the current poll was planned to start in ms
+     */
+    public long getPlannedStart() {
+        return plannedStart;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setValidators(String eTag, String lastModified) {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @param hash The hash of a response body
+     * @return true if the body is the same as the last one processed
+     */
+    public boolean isBodyUnchanged(long hash) {
+        return hasBodyHash && bodyHash == hash;
+    }
+
+    /**
+     * Remember the hash of a response body which has been processed
+     * @param hash The hash of the body
+     */
+    public void setBodyHash(long hash) {
+        bodyHash = hash;
+        hasBodyHash = true;
+    }
+
+    public String getWatermark() {
+        return watermark;
+    }
+
+    public String getResumeUrl() {
+        return resumeUrl;
+    }
+
+    /**
+     * Update the position of a paginated target
+     * @param watermark The highest value ingested
+     * @param resumeUrl The page to start the next poll with, null to start over
+     * @return true if the position changed
+     */
+    public boolean updatePosition(String watermark, String resumeUrl) {
+        if (Objects.equals(this.watermark, watermark) && Objects.equals(this.resumeUrl, resumeUrl)) {
+            return false;
+        }
+        this.watermark = watermark;
+        this.resumeUrl = resumeUrl;
+        return true;
+    }
+
+    public AdaptiveInterval getAdaptiveInterval() {
+        return adaptiveInterval;
+    }
+
+    public void setAdaptiveInterval(AdaptiveInterval adaptiveInterval) {
+        this.adaptiveInterval = adaptiveInterval;
+    }
+
+    /**
+     * @return The time the next poll is due with an adaptive interval in ms
+     */
+    public long getNextPollAt() {
+        return nextPollAt;
+    }
+
+    public void setNextPollAt(long nextPollAt) {
+        this.nextPollAt = nextPollAt;
+    }
+
+    public FingerprintCache getDedupCache() {
+        return dedupCache;
+    }
+
+    public void setDedupCache(FingerprintCache dedupCache) {
+        this.dedupCache = dedupCache;
+    }
+
+    public CounterRates getCounterRates() {
+        return counterRates;
+    }
+
+    public void setCounterRates(CounterRates counterRates) {
+        this.counterRates = counterRates;
+    }
+
+    public boolean isTail() {
+        return tail;
+    }
+
+    public void setTail(boolean tail) {
+        this.tail = tail;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public JRPMetrics.Target getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(JRPMetrics.Target metrics) {
+        this.metrics = metrics;
+    }
+
+    public long getSkippedTicks() {
+        return skippedTicks.get();
+    }
+
+    public long getPolls() {
+        return polls.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getLastResponseTime() {
+        return lastResponseTime;
+    }
+
+    public int getLastStatus() {
+        return lastStatus;
+    }
+
+    @Override
+    public String toString() {
+        return label + " (" + url + ")";
+    }
+}
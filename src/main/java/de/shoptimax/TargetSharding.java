@@ -0,0 +1,175 @@
+package de.shoptimax;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Splits the targets of an input running on every node across the active
+ * nodes, so every target is polled by one node only. Targets are assigned
+ * by consistent hashing: each node owns the targets hashing to the ring
+ * segments in front of its virtual nodes, so a node joining or leaving only
+ * moves the targets of its own segments. The membership is checked
+ * periodically and the ring replaced once it changed; the scheduler asks
+ * for every tick whether the target is still owned by this node.
+ */
+public class TargetSharding {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TargetSharding.class.getName());
+
+    // virtual nodes per node, evens out the share of each node
+    private static final int VIRTUAL_NODES = 128;
+    private static final long REFRESH_SECONDS = 10;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /**
+     * Immutable hash ring, replaced as a whole on every membership change
+     */
+    private static class Ring {
+        private final Set<String> nodeIds;
+        private final long[] points;
+        private final String[] owners;
+
+        private Ring(Set<String> nodeIds) {
+            this.nodeIds = nodeIds;
+            long[][] entries = new long[nodeIds.size() * VIRTUAL_NODES][];
+            String[] nodes = nodeIds.toArray(new String[0]);
+            for (int n = 0; n < nodes.length; n++) {
+                for (int v = 0; v < VIRTUAL_NODES; v++) {
+                    entries[n * VIRTUAL_NODES + v] = new long[]{hash(nodes[n] + "#" + v), n};
+                }
+            }
+            // ties are broken by node id, so every node builds the same ring
+            Arrays.sort(entries, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : nodes[(int) a[1]].compareTo(nodes[(int) b[1]]));
+            this.points = new long[entries.length];
+            this.owners = new String[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                points[i] = entries[i][0];
+                owners[i] = nodes[(int) entries[i][1]];
+            }
+        }
+
+        private String owner(long hash) {
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return owners[index < points.length ? index : 0];
+        }
+    }
+
+    private final ClusterMembership membership;
+    private final List<PollTarget> targets;
+    private final JRPMetrics metrics;
+    private final Consumer<PollTarget> onAcquired;
+    private volatile Ring ring;
+    private ScheduledExecutorService refresher;
+
+    /**
+     * @param membership The source of the active nodes
+     * @param targets All targets of the input
+     * @param metrics The metrics of the input
+     * @param onAcquired Called for every target this node took over from another node, may be null
+     */
+    public TargetSharding(ClusterMembership membership, List<PollTarget> targets, JRPMetrics metrics,
+                          Consumer<PollTarget> onAcquired) {
+        this.membership = membership;
+        this.targets = targets;
+        this.metrics = metrics;
+        this.onAcquired = onAcquired;
+    }
+
+    /**
+     * Build the first ring and check the membership periodically from then on
+     * @param name The name of the refresh thread
+     */
+    public void start(String name) {
+        refresh();
+        refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("jrp-" + name + "-sharding")
+                .setDaemon(true)
+                .build());
+        refresher.scheduleWithFixedDelay(this::refresh, REFRESH_SECONDS, REFRESH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Replace the ring if the active nodes changed. Without a membership
+     * the last known ring is kept; before the first one, this node polls
+     * all targets.
+     */
+    void refresh() {
+        Set<String> nodeIds;
+        try {
+            nodeIds = new TreeSet<>(membership.getActiveNodeIds());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not determine the active nodes, keeping the current assignment of targets", e);
+            if (ring != null) {
+                return;
+            }
+            nodeIds = new TreeSet<>();
+        }
+        // a node which has not sent its first heartbeat yet still polls its share
+        nodeIds.add(membership.getLocalNodeId());
+        Ring current = ring;
+        if (current != null && current.nodeIds.equals(nodeIds)) {
+            return;
+        }
+        Set<PollTarget> owned = new HashSet<>();
+        if (current != null) {
+            for (PollTarget target : targets) {
+                if (owns(current, target)) {
+                    owned.add(target);
+                }
+            }
+        }
+        Ring next = new Ring(nodeIds);
+        ring = next;
+        int ownedCount = 0;
+        for (PollTarget target : targets) {
+            if (owns(next, target)) {
+                ownedCount++;
+                if (current != null && !owned.contains(target) && onAcquired != null) {
+                    onAcquired.accept(target);
+                }
+            }
+        }
+        metrics.sharding(nodeIds.size(), ownedCount);
+        LOGGER.info("Sharding targets across {} nodes, polling {} of {} targets on this node",
+                nodeIds.size(), ownedCount, targets.size());
+    }
+
+    /**
+     * @return true if this node polls the target
+     */
+    public boolean owns(PollTarget target) {
+        Ring current = ring;
+        return current == null || owns(current, target);
+    }
+
+    private boolean owns(Ring ring, PollTarget target) {
+        return membership.getLocalNodeId().equals(ring.owner(hash(target.getUrl() + "|" + target.getLabel())));
+    }
+
+    private static long hash(String key) {
+        return HASH.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+}
@@ -0,0 +1,163 @@
+package de.shoptimax;
+
+import com.google.common.hash.Hashing;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the watermark and resume URL of paginated targets in MongoDB, so
+ * a restarted input, or the node taking over a sharded target, continues
+ * where the previous poll stopped. Every target has a document of its own,
+ * keyed by the input id and the URL and label of the target, which is
+ * updated atomically; nodes polling different targets of one input never
+ * overwrite each other.
+ */
+public class WatermarkStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WatermarkStore.class.getName());
+
+    public static final String COLLECTION = "jrp_input_positions";
+    private static final String FIELD_INPUT_ID = "input_id";
+    private static final String FIELD_URL = "url";
+    private static final String FIELD_LABEL = "label";
+    private static final String FIELD_WATERMARK = "watermark";
+    private static final String FIELD_RESUME_URL = "resume_url";
+
+    private final MongoCollection<Document> positions;
+    private final String inputId;
+
+    /**
+     * @param positions The position collection, null keeps positions in memory only
+     * @param inputId The id of the input owning the targets
+     */
+    public WatermarkStore(MongoCollection<Document> positions, String inputId) {
+        this.positions = positions;
+        this.inputId = inputId;
+        if (positions != null) {
+            try {
+                positions.createIndex(Indexes.ascending(FIELD_INPUT_ID));
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not create the index of " + COLLECTION, e);
+            }
+        }
+    }
+
+    /**
+     * Restore the stored positions of all targets of the input with one
+     * query, and drop the positions of targets which no longer exist
+     * @param targets All targets of the input
+     * @param inputIds The ids of all existing inputs, to drop the positions of deleted inputs; null to keep them
+     */
+    public void loadAll(Collection<PollTarget> targets, Collection<String> inputIds) {
+        if (positions == null) {
+            return;
+        }
+        try {
+            Map<String, PollTarget> byKey = new HashMap<>();
+            for (PollTarget target : targets) {
+                byKey.put(key(target), target);
+            }
+            List<String> removed = new ArrayList<>();
+            for (Document position : positions.find(Filters.eq(FIELD_INPUT_ID, inputId))) {
+                String key = position.getString("_id");
+                PollTarget target = byKey.get(key);
+                if (target != null) {
+                    restore(target, position);
+                } else {
+                    removed.add(key);
+                }
+            }
+            if (!removed.isEmpty()) {
+                LOGGER.debug("Dropping {} positions of removed targets of input {}", removed.size(), inputId);
+                positions.deleteMany(Filters.in("_id", removed));
+            }
+            if (inputIds != null) {
+                positions.deleteMany(Filters.nin(FIELD_INPUT_ID, inputIds));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not load watermarks of input " + inputId, e);
+        }
+    }
+
+    /**
+     * Restore the stored position of a target, e.g. after taking it over from another node
+     * @param target The target
+     */
+    public void load(PollTarget target) {
+        if (positions == null) {
+            return;
+        }
+        try {
+            Document position = positions.find(Filters.eq("_id", key(target))).first();
+            if (position != null) {
+                restore(target, position);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not load watermark of target " + target, e);
+        }
+    }
+
+    private static void restore(PollTarget target, Document position) {
+        String watermark = position.getString(FIELD_WATERMARK);
+        String resumeUrl = position.getString(FIELD_RESUME_URL);
+        LOGGER.debug("Resuming target {} at watermark {}, URL {}", target, watermark, resumeUrl);
+        target.updatePosition(watermark, resumeUrl);
+    }
+
+    /**
+     * Store the current position of a target
+     * @param target The target
+     */
+    public void save(PollTarget target) {
+        if (positions == null) {
+            return;
+        }
+        try {
+            positions.updateOne(Filters.eq("_id", key(target)), Updates.combine(
+                    Updates.set(FIELD_INPUT_ID, inputId),
+                    Updates.set(FIELD_URL, target.getUrl()),
+                    Updates.set(FIELD_LABEL, target.getLabel()),
+                    Updates.set(FIELD_WATERMARK, target.getWatermark()),
+                    Updates.set(FIELD_RESUME_URL, target.getResumeUrl())),
+                    new UpdateOptions().upsert(true));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not save watermark of target " + target, e);
+        }
+    }
+
+    /**
+     * @return The id of the position document, unique per input, URL and label
+     */
+    private String key(PollTarget target) {
+        return inputId + "/" + Hashing.murmur3_128().hashString(
+                target.getUrl() + "|" + StringUtils.defaultString(target.getLabel()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compare two watermarks, numerically if both are numbers, else as
+     * strings, which orders ISO-8601 timestamps correctly
+     * @return A negative number, zero or a positive number as a is lower than, equal to or higher than b
+     */
+    public static int compare(String a, String b) {
+        try {
+            return new BigDecimal(a).compareTo(new BigDecimal(b));
+        } catch (NumberFormatException e) {
+            return a.compareTo(b);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package de.shoptimax.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Include, exclude and rename rules for the fields of an element, compiled
+ * once into a tree of path segments and applied while the element is
+ * parsed, so excluded subtrees are skipped without being materialized.
+ * Paths are dotted field names relative to the element, e.g. "stats.reads",
+ * a "*" segment matches any name. Nested objects can be flattened into
+ * "parent_child" fields. The resulting field names are cached per path, so
+ * they are built once and not for every element. Thread safe.
+ */
+public class FieldProjection {
+
+    /**
+     * Passes every field of the element on unchanged
+     */
+    public static final FieldProjection NONE = new FieldProjection(new Rule(), false, true);
+
+    // bounds the key cache of documents with ever changing field names
+    private static final int MAX_CACHED_KEYS = 16384;
+
+    /**
+     * Receives every field kept by the projection. The parser is positioned
+     * on the first token of the value and the handler has to consume the
+     * whole value.
+     */
+    public interface FieldHandler {
+        void field(String name, JsonParser parser) throws IOException;
+    }
+
+    private static class Rule {
+        private final Map<String, Rule> children = new HashMap<>();
+        private Rule wildcard;
+        private boolean include, exclude, includeBelow, ruleBelow;
+        private String rename;
+
+        private Rule child(String name) {
+            Rule child = children.get(name);
+            return child != null ? child : wildcard;
+        }
+    }
+
+    /**
+     * Field name of a path, with the names of its children created on demand
+     */
+    private class Key {
+        private final String name;
+        private final ConcurrentMap<String, Key> children = new ConcurrentHashMap<>();
+
+        private Key(String name) {
+            this.name = name;
+        }
+
+        private Key child(String fieldName, Rule rule) {
+            Key child = children.get(fieldName);
+            if (child == null) {
+                String childName = rule != null && rule.rename != null ? rule.rename
+                        : name == null ? fieldName : name + "_" + fieldName;
+                child = new Key(childName);
+                if (cachedKeys.get() < MAX_CACHED_KEYS) {
+                    Key existing = children.putIfAbsent(fieldName, child);
+                    if (existing != null) {
+                        return existing;
+                    }
+                    cachedKeys.incrementAndGet();
+                }
+            }
+            return child;
+        }
+    }
+
+    private final Rule root;
+    private final boolean flatten;
+    private final boolean includeAll;
+    private final Key rootKey = new Key(null);
+    private final AtomicInteger cachedKeys = new AtomicInteger();
+
+    private FieldProjection(Rule root, boolean flatten, boolean includeAll) {
+        this.root = root;
+        this.flatten = flatten;
+        this.includeAll = includeAll;
+    }
+
+    /**
+     * Compile the rules of a projection
+     * @param includes Paths to keep, everything is kept if empty
+     * @param excludes Paths to drop, even below an included path
+     * @param renames Field names of paths, replacing the flattened names
+     * @param flatten Whether nested objects are turned into "parent_child" fields
+     * @return The compiled projection
+     * @throws IllegalArgumentException if a path is invalid
+     */
+    public static FieldProjection compile(Collection<String> includes, Collection<String> excludes,
+                                          Map<String, String> renames, boolean flatten) {
+        Rule root = new Rule();
+        for (String path : includes) {
+            rule(root, path, true).include = true;
+        }
+        for (String path : excludes) {
+            rule(root, path, false).exclude = true;
+        }
+        for (Map.Entry<String, String> rename : renames.entrySet()) {
+            if (rename.getKey().contains("*")) {
+                throw new IllegalArgumentException("Wildcard paths cannot be renamed: " + rename.getKey());
+            }
+            if (rename.getValue().trim().isEmpty()) {
+                throw new IllegalArgumentException("Empty field name for path: " + rename.getKey());
+            }
+            rule(root, rename.getKey(), false).rename = rename.getValue().trim();
+        }
+        applyWildcards(root);
+        return new FieldProjection(root, flatten, includes.isEmpty());
+    }
+
+    /**
+     * Copy the rules below a wildcard to the named siblings of the wildcard,
+     * which would hide it otherwise
+     */
+    private static void applyWildcards(Rule rule) {
+        if (rule.wildcard != null) {
+            for (Rule child : rule.children.values()) {
+                merge(rule.wildcard, child);
+            }
+            applyWildcards(rule.wildcard);
+        }
+        for (Rule child : rule.children.values()) {
+            applyWildcards(child);
+        }
+    }
+
+    private static void merge(Rule from, Rule into) {
+        into.include |= from.include;
+        into.exclude |= from.exclude;
+        into.includeBelow |= from.includeBelow;
+        into.ruleBelow |= from.ruleBelow;
+        for (Map.Entry<String, Rule> child : from.children.entrySet()) {
+            merge(child.getValue(), into.children.computeIfAbsent(child.getKey(), s -> new Rule()));
+        }
+        if (from.wildcard != null) {
+            if (into.wildcard == null) {
+                into.wildcard = new Rule();
+            }
+            merge(from.wildcard, into.wildcard);
+        }
+    }
+
+    /**
+     * Get or create the rule of a path, marking the rules above it
+     */
+    private static Rule rule(Rule root, String path, boolean include) {
+        String[] segments = path.trim().split("\\.", -1);
+        Rule rule = root;
+        for (String segment : segments) {
+            if (segment.isEmpty()) {
+                throw new IllegalArgumentException("Empty name in field path: " + path);
+            }
+            rule.ruleBelow = true;
+            rule.includeBelow |= include;
+            if ("*".equals(segment)) {
+                if (rule.wildcard == null) {
+                    rule.wildcard = new Rule();
+                }
+                rule = rule.wildcard;
+            } else {
+                rule = rule.children.computeIfAbsent(segment, s -> new Rule());
+            }
+        }
+        return rule;
+    }
+
+    /**
+     * Read an object and pass the fields it keeps to the handler
+     * @param parser The parser, positioned on the START_OBJECT token
+     * @param handler Receives the kept fields
+     */
+    public void project(JsonParser parser, FieldHandler handler) throws IOException {
+        project(parser, root, includeAll, rootKey, handler);
+    }
+
+    private void project(JsonParser parser, Rule rule, boolean included, Key key, FieldHandler handler) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            Rule child = rule != null ? rule.child(fieldName) : null;
+            boolean childIncluded = included || (child != null && child.include);
+            if ((child != null && child.exclude) || (!childIncluded && (child == null || !child.includeBelow))) {
+                parser.skipChildren();
+                continue;
+            }
+            // objects with rules further down are flattened, the kept part is no longer the original object
+            if (token == JsonToken.START_OBJECT && (flatten || (child != null && child.ruleBelow))) {
+                project(parser, child, childIncluded, key.child(fieldName, child), handler);
+            } else if (childIncluded) {
+                // top level fields keep their name unless renamed
+                boolean keepName = key == rootKey && (child == null || child.rename == null);
+                handler.field(keepName ? fieldName : key.child(fieldName, child).name, parser);
+            } else {
+                // only fields of an object are included, but this is none
+                parser.skipChildren();
+            }
+        }
+    }
+}
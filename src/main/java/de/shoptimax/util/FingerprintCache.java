@@ -0,0 +1,117 @@
+package de.shoptimax.util;
+
+/**
+ * Set of the most recently seen 64 bit fingerprints with a fixed capacity
+ * and fixed memory, 33 to 57 bytes per entry, without boxing. Fingerprints
+ * live in an open-addressing table with linear probing, the eviction order
+ * is a CLOCK ring: once the cache is full, the oldest fingerprint which was
+ * not seen again since the hand last passed it is replaced. Not thread safe.
+ */
+public class FingerprintCache {
+
+    // 0 marks a free slot, fingerprints of 0 are stored as 1
+    private static final long FREE = 0;
+
+    private final long[] keys;
+    // ring index of the fingerprint in each table slot
+    private final int[] ringIndex;
+    private final int mask;
+    private final long[] ring;
+    private final boolean[] referenced;
+    private int size, hand;
+
+    /**
+     * @param capacity Maximum number of fingerprints kept
+     */
+    public FingerprintCache(int capacity) {
+        capacity = Math.max(1, capacity);
+        // load factor of at most 0.5 keeps probe sequences short
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.keys = new long[tableSize];
+        this.ringIndex = new int[tableSize];
+        this.mask = tableSize - 1;
+        this.ring = new long[capacity];
+        this.referenced = new boolean[capacity];
+    }
+
+    /**
+     * Add a fingerprint unless it is already known
+     * @param fingerprint The fingerprint
+     * @return true if the fingerprint was seen before
+     */
+    public boolean seen(long fingerprint) {
+        long key = fingerprint == FREE ? 1 : fingerprint;
+        int slot = find(key);
+        if (keys[slot] == key) {
+            referenced[ringIndex[slot]] = true;
+            return true;
+        }
+        int index;
+        if (size < ring.length) {
+            index = size++;
+        } else {
+            // second chance for fingerprints seen again since the last round
+            while (referenced[hand]) {
+                referenced[hand] = false;
+                hand = (hand + 1) % ring.length;
+            }
+            index = hand;
+            hand = (hand + 1) % ring.length;
+            remove(ring[index]);
+            slot = find(key);
+        }
+        ring[index] = key;
+        referenced[index] = false;
+        keys[slot] = key;
+        ringIndex[slot] = index;
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * @return The slot holding the key, or the free slot ending its probe sequence
+     */
+    private int find(long key) {
+        int slot = spread(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Remove a key, moving later entries of its probe sequence back so no
+     * lookup stops at the freed slot too early
+     */
+    private void remove(long key) {
+        int slot = find(key);
+        if (keys[slot] != key) {
+            return;
+        }
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = spread(keys[next]) & mask;
+            // move the entry if its home is not within (free, next]
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                ringIndex[free] = ringIndex[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = FREE;
+    }
+
+    private static int spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
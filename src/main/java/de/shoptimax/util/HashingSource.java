@@ -0,0 +1,58 @@
+package de.shoptimax.util;
+
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Source hashing the bytes read from it, so a response body can be
+ * compared with the previous one while it is streamed. Closing it reads
+ * the bytes a parser left behind, the hash always covers the whole source.
+ */
+public class HashingSource extends ForwardingSource {
+
+    private final Hasher hasher = Hashing.murmur3_128().newHasher();
+    private final OutputStream hasherStream = Funnels.asOutputStream(hasher);
+    private boolean exhausted;
+
+    public HashingSource(Source delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public long read(Buffer sink, long byteCount) throws IOException {
+        long read = super.read(sink, byteCount);
+        if (read > 0) {
+            sink.copyTo(hasherStream, sink.size() - read, read);
+        } else if (read == -1) {
+            exhausted = true;
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            Buffer rest = new Buffer();
+            while (!exhausted) {
+                read(rest, 8192);
+                rest.clear();
+            }
+        } finally {
+            super.close();
+        }
+    }
+
+    /**
+     * @return The hash of all bytes of the source, once it has been closed
+     */
+    public long hash() {
+        return hasher.hash().asLong();
+    }
+}
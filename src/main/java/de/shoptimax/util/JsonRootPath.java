@@ -0,0 +1,206 @@
+package de.shoptimax.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Streaming matcher for a small JsonPath subset, used to select the root
+ * element(s) of a response body, e.g. "$.events[*]" or "$['data'].items[*]".
+ * Supported are child names, "*" wildcards and array indexes. Values not on
+ * the path are skipped by the parser without being materialized.
+ */
+public class JsonRootPath {
+
+    /**
+     * Matches the whole document
+     */
+    public static final JsonRootPath DOCUMENT = compile("$");
+
+    /**
+     * Receives every matched element. The parser is positioned on the first
+     * token of the element and the handler has to consume the whole value.
+     */
+    public interface ElementHandler {
+        void element(JsonParser parser) throws IOException;
+    }
+
+    private static class Segment {
+        // null matches any name or index
+        private final String name;
+        private final int index;
+
+        private Segment(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        private boolean isWildcard() {
+            return name == null && index < 0;
+        }
+    }
+
+    private final String path;
+    private final List<Segment> segments;
+
+    private JsonRootPath(String path, List<Segment> segments) {
+        this.path = path;
+        this.segments = segments;
+    }
+
+    /**
+     * Parse a root path expression
+     * @param path The expression, must start with "$"
+     * @return The compiled path
+     * @throws IllegalArgumentException if the expression is not supported
+     */
+    public static JsonRootPath compile(String path) {
+        String expr = path.trim();
+        if (!expr.startsWith("$")) {
+            throw new IllegalArgumentException("Root path must start with $: " + path);
+        }
+        ImmutableList.Builder<Segment> segments = ImmutableList.builder();
+        int pos = 1;
+        while (pos < expr.length()) {
+            char c = expr.charAt(pos);
+            if (c == '.') {
+                int end = pos + 1;
+                while (end < expr.length() && expr.charAt(end) != '.' && expr.charAt(end) != '[') {
+                    end++;
+                }
+                String name = expr.substring(pos + 1, end);
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Empty name in root path: " + path);
+                }
+                segments.add("*".equals(name) ? new Segment(null, -1) : new Segment(name, -1));
+                pos = end;
+            } else if (c == '[') {
+                int end = expr.indexOf(']', pos);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unclosed [ in root path: " + path);
+                }
+                String selector = expr.substring(pos + 1, end).trim();
+                if ("*".equals(selector)) {
+                    segments.add(new Segment(null, -1));
+                } else if (selector.length() > 1 && (selector.startsWith("'") && selector.endsWith("'")
+                        || selector.startsWith("\"") && selector.endsWith("\""))) {
+                    segments.add(new Segment(selector.substring(1, selector.length() - 1), -1));
+                } else {
+                    try {
+                        segments.add(new Segment(null, Integer.parseInt(selector)));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Unsupported selector [" + selector + "] in root path: " + path);
+                    }
+                }
+                pos = end + 1;
+            } else {
+                throw new IllegalArgumentException("Unexpected character '" + c + "' in root path: " + path);
+            }
+        }
+        return new JsonRootPath(expr, segments.build());
+    }
+
+    /**
+     * Read the document from the parser and pass every matched element to the handler
+     * @param parser A parser positioned before the document
+     * @param handler The handler receiving the elements
+     * @return The number of matched elements
+     * @throws IOException if the document could not be read
+     */
+    public int extract(JsonParser parser, ElementHandler handler) throws IOException {
+        return extract(parser, handler, null, null);
+    }
+
+    /**
+     * Read the document from the parser and pass every element matched by
+     * this path to the handler and every value matched by a second path to
+     * its own handler, in a single pass. A value matched by both paths goes
+     * to the first handler only.
+     * @param parser A parser positioned before the document
+     * @param handler The handler receiving the elements
+     * @param otherPath The second path, may be null
+     * @param otherHandler The handler receiving the values of the second path
+     * @return The number of elements matched by this path
+     * @throws IOException if the document could not be read
+     */
+    public int extract(JsonParser parser, ElementHandler handler,
+                       JsonRootPath otherPath, ElementHandler otherHandler) throws IOException {
+        if (parser.nextToken() == null) {
+            return 0;
+        }
+        JsonRootPath[] paths = otherPath != null ? new JsonRootPath[]{this, otherPath} : new JsonRootPath[]{this};
+        ElementHandler[] handlers = {handler, otherHandler};
+        int[] matched = new int[paths.length];
+        match(parser, 0, (1 << paths.length) - 1, paths, handlers, matched);
+        return matched[0];
+    }
+
+    /**
+     * @param active Bit set of the paths matching up to this depth
+     */
+    private static void match(JsonParser parser, int depth, int active, JsonRootPath[] paths,
+                              ElementHandler[] handlers, int[] matched) throws IOException {
+        for (int i = 0; i < paths.length; i++) {
+            if ((active & 1 << i) != 0 && depth == paths[i].segments.size()) {
+                handlers[i].element(parser);
+                matched[i]++;
+                return;
+            }
+        }
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                int next = step(paths, active, depth, name, -1);
+                if (next != 0) {
+                    match(parser, depth + 1, next, paths, handlers, matched);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            int index = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                int next = step(paths, active, depth, null, index);
+                if (next != 0) {
+                    match(parser, depth + 1, next, paths, handlers, matched);
+                } else {
+                    parser.skipChildren();
+                }
+                index++;
+            }
+        } else {
+            parser.skipChildren();
+        }
+    }
+
+    /**
+     * @return Bit set of the active paths whose segment at the given depth
+     * matches the object field name or, if name is null, the array index
+     */
+    private static int step(JsonRootPath[] paths, int active, int depth, String name, int index) {
+        int next = 0;
+        for (int i = 0; i < paths.length; i++) {
+            if ((active & 1 << i) == 0 || depth >= paths[i].segments.size()) {
+                continue;
+            }
+            Segment segment = paths[i].segments.get(depth);
+            boolean matches = name != null
+                    ? segment.index < 0 && (segment.isWildcard() || name.equals(segment.name))
+                    : segment.name == null && (segment.isWildcard() || segment.index == index);
+            if (matches) {
+                next |= 1 << i;
+            }
+        }
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
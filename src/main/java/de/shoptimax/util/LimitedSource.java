@@ -0,0 +1,47 @@
+package de.shoptimax.util;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+import java.io.IOException;
+
+/**
+ * Source failing as soon as more than a maximum number of bytes has been
+ * read from it, so an oversized response body is rejected while it is
+ * streamed instead of after it has been buffered.
+ */
+public class LimitedSource extends ForwardingSource {
+
+    /**
+     * Thrown when the body exceeds the limit
+     */
+    public static class BodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public BodyTooLargeException(long maxBytes) {
+            super("Response body larger than " + maxBytes + " bytes");
+        }
+    }
+
+    private final long maxBytes;
+    private long bytesRead;
+
+    public LimitedSource(Source delegate, long maxBytes) {
+        super(delegate);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public long read(Buffer sink, long byteCount) throws IOException {
+        // one byte more than allowed tells an exact fit from an oversized body
+        long read = super.read(sink, Math.min(byteCount, maxBytes - bytesRead + 1));
+        if (read > 0) {
+            bytesRead += read;
+            if (bytesRead > maxBytes) {
+                throw new BodyTooLargeException(maxBytes);
+            }
+        }
+        return read;
+    }
+}
@@ -0,0 +1,336 @@
+package de.shoptimax.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary payload holding one or more records of typed fields,
+ * written by the transport and read by the codec without a JSON parser:
+ *
+ * <pre>
+ * batch  := 0x00 'J' version record+
+ * record := field* 0xFF
+ * field  := type key value
+ * </pre>
+ *
+ * Strings are a varint length followed by UTF-8 bytes, longs are zigzag
+ * varints, doubles are 8 bytes big endian. A key is written as string the
+ * first time it occurs in a batch (varint length * 2), after that as the
+ * index of its first occurrence (varint index * 2 + 1), so records of the
+ * same shape neither repeat nor decode their keys again. Nested objects and arrays are
+ * kept as JSON text, like the GELF codec does. A batch never starts with
+ * '{', so it can be told apart from a GELF JSON payload.
+ */
+public class RecordBatch {
+
+    public static final byte TYPE_NULL = 0;
+    public static final byte TYPE_FALSE = 1;
+    public static final byte TYPE_TRUE = 2;
+    public static final byte TYPE_LONG = 3;
+    public static final byte TYPE_DOUBLE = 4;
+    public static final byte TYPE_STRING = 5;
+    public static final byte TYPE_JSON = 6;
+    private static final byte END_OF_RECORD = (byte) 0xFF;
+
+    private static final byte MAGIC_0 = 0x00;
+    private static final byte MAGIC_1 = 'J';
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 3;
+
+    /**
+     * Receives the fields of the records of a batch
+     */
+    public interface RecordHandler {
+        void field(String key, Object value);
+
+        void endRecord();
+    }
+
+    private byte[] buffer;
+    // end of the last complete record
+    private int size, recordEnd;
+    private int records;
+    // keys of the batch by index of first occurrence
+    private final Map<String, Integer> keyIndex = new HashMap<>();
+    private final List<String> keys = new ArrayList<>();
+    private int recordEndKeys;
+
+    public RecordBatch(int initialCapacity) {
+        this.buffer = new byte[Math.max(HEADER_SIZE, initialCapacity)];
+        reset();
+    }
+
+    /**
+     * Drop all records, the buffer is kept for the next batch
+     */
+    public void reset() {
+        buffer[0] = MAGIC_0;
+        buffer[1] = MAGIC_1;
+        buffer[2] = VERSION;
+        size = HEADER_SIZE;
+        recordEnd = HEADER_SIZE;
+        records = 0;
+        keyIndex.clear();
+        keys.clear();
+        recordEndKeys = 0;
+    }
+
+    /**
+     * Drop the fields added since the last complete record, after the
+     * record could not be written completely
+     */
+    public void discardRecord() {
+        size = recordEnd;
+        while (keys.size() > recordEndKeys) {
+            keyIndex.remove(keys.remove(keys.size() - 1));
+        }
+    }
+
+    /**
+     * @return Number of complete records
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    /**
+     * @return Size of the batch in bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The complete records as payload
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, recordEnd);
+    }
+
+    /**
+     * Add a scalar field, other values are added as their string
+     */
+    public void field(String key, Object value) {
+        if (value == null) {
+            nullField(key);
+        } else if (value instanceof String) {
+            stringField(key, (String) value);
+        } else if (value instanceof Boolean) {
+            booleanField(key, (Boolean) value);
+        } else if (value instanceof Double || value instanceof Float || value instanceof BigDecimal
+                || (value instanceof BigInteger && ((BigInteger) value).bitLength() > 63)) {
+            doubleField(key, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            longField(key, ((Number) value).longValue());
+        } else {
+            stringField(key, String.valueOf(value));
+        }
+    }
+
+    public void nullField(String key) {
+        writeKey(TYPE_NULL, key);
+    }
+
+    public void booleanField(String key, boolean value) {
+        writeKey(value ? TYPE_TRUE : TYPE_FALSE, key);
+    }
+
+    public void longField(String key, long value) {
+        writeKey(TYPE_LONG, key);
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void doubleField(String key, double value) {
+        writeKey(TYPE_DOUBLE, key);
+        ensure(8);
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (bits >>> shift);
+        }
+    }
+
+    public void stringField(String key, String value) {
+        writeKey(TYPE_STRING, key);
+        writeString(value);
+    }
+
+    /**
+     * Add a nested object or array as JSON text
+     */
+    public void jsonField(String key, String json) {
+        writeKey(TYPE_JSON, key);
+        writeString(json);
+    }
+
+    public void endRecord() {
+        ensure(1);
+        buffer[size++] = END_OF_RECORD;
+        recordEnd = size;
+        recordEndKeys = keys.size();
+        records++;
+    }
+
+    private void writeKey(byte type, String key) {
+        ensure(1);
+        buffer[size++] = type;
+        Integer index = keyIndex.get(key);
+        if (index != null) {
+            writeVarLong((long) index << 1 | 1);
+        } else {
+            keyIndex.put(key, keys.size());
+            keys.add(key);
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            writeVarLong((long) bytes.length << 1);
+            writeBytes(bytes);
+        }
+    }
+
+    private void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        writeBytes(bytes);
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void ensure(int bytes) {
+        if (size + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+        }
+    }
+
+    /**
+     * @return true if the payload starts like a record batch
+     */
+    public static boolean isBatch(byte[] payload) {
+        return payload.length >= HEADER_SIZE && payload[0] == MAGIC_0 && payload[1] == MAGIC_1;
+    }
+
+    /**
+     * Read all records of a batch. Nested JSON fields are passed on as
+     * their JSON text, booleans as Boolean, numbers as Long or Double.
+     * @param payload The batch
+     * @param handler Receives the fields of every record
+     * @return The number of records
+     * @throws IllegalArgumentException if the payload is not a valid batch
+     */
+    public static int read(byte[] payload, RecordHandler handler) {
+        if (!isBatch(payload) || payload[2] != VERSION) {
+            throw new IllegalArgumentException("Not a record batch of version " + VERSION);
+        }
+        Reader reader = new Reader(payload);
+        int count = 0;
+        try {
+            while (reader.pos < payload.length) {
+                byte type = payload[reader.pos++];
+                if (type == END_OF_RECORD) {
+                    handler.endRecord();
+                    count++;
+                    continue;
+                }
+                String key = reader.readKey();
+                switch (type) {
+                    case TYPE_NULL:
+                        handler.field(key, null);
+                        break;
+                    case TYPE_FALSE:
+                        handler.field(key, Boolean.FALSE);
+                        break;
+                    case TYPE_TRUE:
+                        handler.field(key, Boolean.TRUE);
+                        break;
+                    case TYPE_LONG:
+                        long zigzag = reader.readVarLong();
+                        handler.field(key, (zigzag >>> 1) ^ -(zigzag & 1));
+                        break;
+                    case TYPE_DOUBLE:
+                        handler.field(key, Double.longBitsToDouble(reader.readLong()));
+                        break;
+                    case TYPE_STRING:
+                    case TYPE_JSON:
+                        handler.field(key, reader.readString());
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown field type " + type + " at " + (reader.pos - 1));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated record batch", e);
+        }
+        return count;
+    }
+
+    private static class Reader {
+        private final byte[] payload;
+        private final List<String> keys = new ArrayList<>();
+        private int pos = HEADER_SIZE;
+
+        private Reader(byte[] payload) {
+            this.payload = payload;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = payload[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        private long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = value << 8 | (payload[pos++] & 0xFF);
+            }
+            return value;
+        }
+
+        private String readKey() {
+            long header = readVarLong();
+            if ((header & 1) != 0) {
+                if (header >> 1 >= keys.size()) {
+                    throw new IllegalArgumentException("Unknown key " + (header >> 1) + " at " + pos);
+                }
+                return keys.get((int) (header >> 1));
+            }
+            String key = readString(header >> 1);
+            keys.add(key);
+            return key;
+        }
+
+        private String readString() {
+            return readString(readVarLong());
+        }
+
+        private String readString(long length) {
+            if (length < 0 || pos + length > payload.length) {
+                throw new IllegalArgumentException("Invalid string length " + length + " at " + pos);
+            }
+            String value = new String(payload, pos, (int) length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package de.shoptimax.util;
+
+/**
+ * Last numeric sample, value and time, of the fields of a target, keyed by
+ * field name and element index. Values are kept in primitive arrays of an
+ * open-addressing table, so updating a sample does not allocate. The table
+ * grows up to a maximum number of fields. Not thread safe.
+ */
+public class SampleTable {
+
+    private final int maxSize;
+    private String[] names;
+    private int[] elements;
+    private double[] values;
+    private long[] times;
+    private int size;
+
+    /**
+     * @param maxSize Maximum number of fields, further fields are not tracked
+     */
+    public SampleTable(int maxSize) {
+        this.maxSize = maxSize;
+        allocate(16);
+    }
+
+    /**
+     * @return The slot of the field, or -1 if it has no sample yet
+     */
+    public int find(String name, int element) {
+        int slot = probe(names, elements, name, element);
+        return names[slot] != null ? slot : -1;
+    }
+
+    public double valueAt(int slot) {
+        return values[slot];
+    }
+
+    public long timeAt(int slot) {
+        return times[slot];
+    }
+
+    public void setAt(int slot, double value, long time) {
+        values[slot] = value;
+        times[slot] = time;
+    }
+
+    /**
+     * Add the first sample of a field
+     * @return false if the table is full
+     */
+    public boolean add(String name, int element, double value, long time) {
+        if (size >= maxSize) {
+            return false;
+        }
+        if ((size + 1) * 2 > names.length) {
+            grow();
+        }
+        int slot = probe(names, elements, name, element);
+        if (names[slot] == null) {
+            names[slot] = name;
+            elements[slot] = element;
+            size++;
+        }
+        setAt(slot, value, time);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int probe(String[] names, int[] elements, String name, int element) {
+        int mask = names.length - 1;
+        int hash = (name.hashCode() * 31 + element) * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (names[slot] != null && (elements[slot] != element || !names[slot].equals(name))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        String[] oldNames = names;
+        int[] oldElements = elements;
+        double[] oldValues = values;
+        long[] oldTimes = times;
+        allocate(oldNames.length * 2);
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int slot = probe(names, elements, oldNames[i], oldElements[i]);
+                names[slot] = oldNames[i];
+                elements[slot] = oldElements[i];
+                values[slot] = oldValues[i];
+                times[slot] = oldTimes[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        names = new String[capacity];
+        elements = new int[capacity];
+        values = new double[capacity];
+        times = new long[capacity];
+    }
+}
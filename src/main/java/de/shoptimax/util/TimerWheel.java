@@ -0,0 +1,184 @@
+package de.shoptimax.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Hashed timer wheel running periodic tasks on a single thread. Time is
+ * cut into ticks of a fixed length, every task sits in the bucket of the
+ * tick it is due in, so a tick only looks at its own bucket no matter how
+ * many tasks are scheduled. Deadlines are kept on the monotonic clock, so
+ * a wall clock step neither stalls nor rushes the wheel. Only the first
+ * deadline is given as wall clock time, which keeps phases aligned across
+ * restarts and nodes. Rounds missed by a task, e.g. during a GC pause or
+ * a slow task, are coalesced into a single run.
+ */
+public class TimerWheel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimerWheel.class.getName());
+
+    /**
+     * Receives the statistics of every tick
+     */
+    public interface TickListener {
+        /**
+         * @param lagMs How much later than planned the tick ran in ms
+         * @param fired Number of tasks run by the tick
+         */
+        void tick(long lagMs, int fired);
+    }
+
+    private static class Entry {
+        private final LongConsumer task;
+        private final long periodMs;
+        private long deadline, tick;
+
+        private Entry(LongConsumer task, long deadline, long periodMs) {
+            this.task = task;
+            this.deadline = deadline;
+            this.periodMs = periodMs;
+        }
+    }
+
+    private final long tickMs;
+    private final int mask;
+    private final List<Entry>[] buckets;
+    // entries scheduled from other threads, moved into the buckets by the wheel thread
+    private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+    private final TickListener listener;
+    private final Thread thread;
+    // start of the monotonic time of the wheel
+    private final long originNanos = System.nanoTime();
+    private volatile boolean shutdown;
+    private long currentTick;
+
+    /**
+     * @param tickMs Length of a tick in ms
+     * @param wheelSize Number of buckets, rounded up to a power of two
+     * @param threadFactory Creates the wheel thread
+     * @param listener Receives the statistics of every tick, may be null
+     */
+    public TimerWheel(long tickMs, int wheelSize, ThreadFactory threadFactory, TickListener listener) {
+        this.tickMs = Math.max(1, tickMs);
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = newBuckets(size);
+        this.listener = listener;
+        this.thread = threadFactory.newThread(this::work);
+        this.thread.start();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Entry>[] newBuckets(int size) {
+        // arrays of a generic type cannot be created directly, the buckets are only accessed as List<Entry>
+        List<Entry>[] buckets = new List[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        return buckets;
+    }
+
+    /**
+     * Run a task periodically. The task receives the wall clock time it was
+     * due at. Deadlines are the previous deadline plus the period, so late
+     * ticks do not make the schedule drift. If a run is late by one or more
+     * periods, the missed rounds are dropped and the schedule continues
+     * with the first deadline after now.
+     * @param firstDeadline Wall clock time of the first run in ms
+     * @param periodMs Time between runs in ms, at least one tick
+     * @param task The task
+     */
+    public void schedule(long firstDeadline, long periodMs, LongConsumer task) {
+        long deadline = nowMs() + firstDeadline - System.currentTimeMillis();
+        pending.add(new Entry(task, deadline, Math.max(tickMs, periodMs)));
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        thread.interrupt();
+    }
+
+    private void work() {
+        List<Entry> due = new ArrayList<>();
+        while (!shutdown) {
+            long tickTime = currentTick * tickMs;
+            long now = nowMs();
+            if (now < tickTime) {
+                try {
+                    Thread.sleep(tickTime - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            Entry entry;
+            while ((entry = pending.poll()) != null) {
+                insert(entry);
+            }
+            List<Entry> bucket = buckets[(int) (currentTick & mask)];
+            for (int i = 0; i < bucket.size(); ) {
+                Entry candidate = bucket.get(i);
+                if (candidate.tick <= currentTick) {
+                    // swap remove, the order within a bucket does not matter
+                    bucket.set(i, bucket.get(bucket.size() - 1));
+                    bucket.remove(bucket.size() - 1);
+                    due.add(candidate);
+                } else {
+                    i++;
+                }
+            }
+            long wallClockOffset = System.currentTimeMillis() - now;
+            for (Entry fired : due) {
+                try {
+                    fired.task.accept(fired.deadline + wallClockOffset);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Timer task failed", e);
+                }
+                fired.deadline += fired.periodMs;
+                long missed = (nowMs() - fired.deadline) / fired.periodMs;
+                if (missed >= 0) {
+                    // one run covered the missed rounds, instead of a burst catching up on them
+                    fired.deadline += (missed + 1) * fired.periodMs;
+                }
+            }
+            currentTick++;
+            for (Entry fired : due) {
+                insert(fired);
+            }
+            if (listener != null) {
+                listener.tick(now - tickTime, due.size());
+            }
+            due.clear();
+        }
+    }
+
+    /**
+     * @return Monotonic time since the start of the wheel in ms
+     */
+    private long nowMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - originNanos);
+    }
+
+    private void insert(Entry entry) {
+        // the first tick starting at or after the deadline, late entries run with the next tick
+        entry.tick = Math.max(currentTick, (entry.deadline + tickMs - 1) / tickMs);
+        buckets[(int) (entry.tick & mask)].add(entry);
+    }
+}
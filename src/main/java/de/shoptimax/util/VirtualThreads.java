@@ -0,0 +1,35 @@
+package de.shoptimax.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads of Java 21 and later, looked up by reflection so the
+ * plugin still builds and runs on Java 8.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @param prefix The name of the threads, followed by a counter
+     * @return An executor starting a new virtual thread for every task, or
+     *         null if the JVM has no virtual threads or only as preview
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // no such method before Java 19, an UnsupportedOperationException without --enable-preview on 19 and 20
+            return null;
+        }
+    }
+}
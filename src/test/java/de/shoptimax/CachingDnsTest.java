@@ -0,0 +1,182 @@
+package de.shoptimax;
+
+import com.codahale.metrics.MetricRegistry;
+import okhttp3.Dns;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CachingDnsTest {
+
+    private static final long TTL_MS = 60_000;
+    private static final long MAX_STALE_MS = 600_000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final AtomicInteger resolutions = new AtomicInteger();
+    private volatile boolean resolverDown;
+    private volatile byte lastOctet = 1;
+    private JRPMetrics metrics;
+    private MetricRegistry registry;
+
+    /**
+     * Resolves every host to 10.0.0.lastOctet, or fails while the resolver is down
+     */
+    private final Dns resolver = hostname -> {
+        resolutions.incrementAndGet();
+        if (resolverDown) {
+            throw new UnknownHostException(hostname);
+        }
+        return Collections.singletonList(InetAddress.getByAddress(hostname, new byte[]{10, 0, 0, lastOctet}));
+    };
+
+    @Before
+    public void setUp() {
+        metrics = new JRPMetrics(new MetricRegistry());
+        registry = (MetricRegistry) metrics.getMetricSet();
+    }
+
+    private CachingDns cache(int maxHosts) {
+        return new CachingDns(resolver, TTL_MS, MAX_STALE_MS, maxHosts, now::get);
+    }
+
+    @Test
+    public void usesAddressesForTheirTtl() throws Exception {
+        Dns dns = cache(100).forInput(metrics, 0);
+        dns.lookup("a.example");
+        now.addAndGet(TTL_MS / 2);
+        lastOctet = 2;
+        assertEquals(1, octet(dns.lookup("a.example")));
+        assertEquals(1, resolutions.get());
+
+        now.addAndGet(TTL_MS / 2);
+        assertEquals(2, octet(dns.lookup("a.example")));
+        assertEquals(2, resolutions.get());
+        assertCounts(1, 2, 0);
+    }
+
+    @Test
+    public void appliesTheTtlOfTheInput() throws Exception {
+        CachingDns cache = cache(100);
+        Dns shortTtl = cache.forInput(metrics, 1000);
+        Dns defaultTtl = cache.forInput(metrics, 0);
+        shortTtl.lookup("a.example");
+        now.addAndGet(1000);
+        defaultTtl.lookup("a.example");
+        assertEquals(1, resolutions.get());
+        shortTtl.lookup("a.example");
+        assertEquals(2, resolutions.get());
+    }
+
+    @Test
+    public void refreshesAheadOfExpiry() throws Exception {
+        Dns dns = cache(100).forInput(metrics, 0);
+        dns.lookup("a.example");
+        now.addAndGet((long) (TTL_MS * 0.8) - 1);
+        dns.lookup("a.example");
+        assertEquals(1, resolutions.get());
+
+        now.addAndGet(1);
+        lastOctet = 2;
+        // the lookup is answered from the cache, the refresh runs in the background
+        assertEquals(1, octet(dns.lookup("a.example")));
+        waitFor(() -> octet(lookup(dns, "a.example")) == 2);
+        assertEquals(2, resolutions.get());
+
+        // fresh again for a whole TTL from the refresh
+        now.addAndGet(TTL_MS * 3 / 4);
+        dns.lookup("a.example");
+        assertEquals(2, resolutions.get());
+        assertEquals(1, registry.getMeters().get("dnsCacheMisses").getCount());
+    }
+
+    @Test
+    public void servesStaleAddressesWhileTheResolverFails() throws Exception {
+        Dns dns = cache(100).forInput(metrics, 0);
+        dns.lookup("a.example");
+        resolverDown = true;
+        now.addAndGet(TTL_MS + MAX_STALE_MS - 1);
+        assertEquals(1, octet(dns.lookup("a.example")));
+        assertCounts(0, 2, 1);
+
+        now.addAndGet(1);
+        try {
+            dns.lookup("a.example");
+            fail("too stale addresses must not be used");
+        } catch (UnknownHostException e) {
+            assertCounts(0, 2, 1);
+        }
+
+        try {
+            dns.lookup("b.example");
+            fail("unknown host without cached addresses");
+        } catch (UnknownHostException e) {
+            assertEquals(4, resolutions.get());
+        }
+    }
+
+    @Test
+    public void boundsTheNumberOfHosts() throws Exception {
+        CachingDns cache = cache(CachingDns.DEFAULT_MAX_HOSTS);
+        for (int i = 0; i < CachingDns.DEFAULT_MAX_HOSTS; i++) {
+            cache.lookup("host" + i + ".example", null);
+        }
+        assertEquals(CachingDns.DEFAULT_MAX_HOSTS, cache.size());
+        cache.lookup("one-more.example", null);
+        assertTrue("size " + cache.size(), cache.size() <= CachingDns.DEFAULT_MAX_HOSTS * 0.9 + 1);
+    }
+
+    @Test
+    public void evictsExpiredHostsFirst() throws Exception {
+        CachingDns cache = cache(10);
+        for (int i = 0; i < 5; i++) {
+            cache.lookup("old" + i + ".example", null);
+        }
+        now.addAndGet(TTL_MS + MAX_STALE_MS);
+        for (int i = 0; i < 6; i++) {
+            cache.lookup("new" + i + ".example", null);
+        }
+        assertEquals(6, cache.size());
+        int resolved = resolutions.get();
+        for (int i = 0; i < 6; i++) {
+            cache.lookup("new" + i + ".example", null);
+        }
+        assertEquals(resolved, resolutions.get());
+    }
+
+    private void assertCounts(long hits, long misses, long stale) {
+        assertEquals("hits", hits, registry.getMeters().get("dnsCacheHits").getCount());
+        assertEquals("misses", misses, registry.getMeters().get("dnsCacheMisses").getCount());
+        assertEquals("stale", stale, registry.getMeters().get("dnsCacheStale").getCount());
+    }
+
+    private static int octet(List<InetAddress> addresses) {
+        return addresses.get(0).getAddress()[3];
+    }
+
+    private static List<InetAddress> lookup(Dns dns, String hostname) {
+        try {
+            return dns.lookup(hostname);
+        } catch (UnknownHostException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
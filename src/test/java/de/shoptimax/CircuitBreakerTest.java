@@ -0,0 +1,74 @@
+package de.shoptimax;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MS = 1000;
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN_MS, 1);
+        assertFalse(breaker.onFailure(0));
+        assertFalse(breaker.onFailure(0));
+        // a success in between starts counting over
+        breaker.onSuccess();
+        assertFalse(breaker.onFailure(0));
+        assertFalse(breaker.onFailure(0));
+        assertTrue(breaker.allowRequest(0));
+        assertTrue(breaker.onFailure(0));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(OPEN_MS - 1));
+    }
+
+    @Test
+    public void closesAfterSuccessfulProbes() {
+        CircuitBreaker breaker = open(new CircuitBreaker(1, OPEN_MS, 2));
+        assertTrue(breaker.allowRequest(OPEN_MS));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.onSuccess());
+        assertTrue(breaker.allowRequest(OPEN_MS + 1));
+        assertTrue(breaker.onSuccess());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(OPEN_MS + 2));
+    }
+
+    @Test
+    public void failedProbeOpensAgain() {
+        CircuitBreaker breaker = open(new CircuitBreaker(1, OPEN_MS, 1));
+        assertTrue(breaker.allowRequest(OPEN_MS));
+        // only the transition from closed counts as opening
+        assertFalse(breaker.onFailure(OPEN_MS + 10));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(2 * OPEN_MS));
+        assertTrue(breaker.allowRequest(2 * OPEN_MS + 10));
+    }
+
+    @Test
+    public void letsOneProbeThroughAtATime() {
+        CircuitBreaker breaker = open(new CircuitBreaker(1, OPEN_MS, 3));
+        assertTrue(breaker.allowRequest(OPEN_MS));
+        assertFalse(breaker.allowRequest(OPEN_MS + 1));
+        assertFalse(breaker.allowRequest(OPEN_MS + 2));
+        breaker.onSuccess();
+        assertTrue(breaker.allowRequest(OPEN_MS + 3));
+        assertFalse(breaker.allowRequest(OPEN_MS + 4));
+    }
+
+    @Test
+    public void replacesProbeWithoutOutcome() {
+        CircuitBreaker breaker = open(new CircuitBreaker(1, OPEN_MS, 1));
+        assertTrue(breaker.allowRequest(OPEN_MS));
+        assertFalse(breaker.allowRequest(2 * OPEN_MS - 1));
+        assertTrue(breaker.allowRequest(2 * OPEN_MS));
+    }
+
+    private static CircuitBreaker open(CircuitBreaker breaker) {
+        assertTrue(breaker.onFailure(0));
+        return breaker;
+    }
+}
@@ -0,0 +1,64 @@
+package de.shoptimax;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CounterRatesTest {
+
+    @Test
+    public void computesRatePerSecond() {
+        CounterRates rates = new CounterRates(ImmutableSet.of("requests"), null, false);
+        assertTrue(Double.isNaN(rates.update("requests", -1, 100, 1000)));
+        assertEquals(50, rates.update("requests", -1, 200, 3000), 1e-9);
+        assertEquals(0, rates.update("requests", -1, 200, 4000), 1e-9);
+        assertTrue(rates.isUnchanged());
+    }
+
+    @Test
+    public void counterResetCountsFromZero() {
+        CounterRates rates = new CounterRates(ImmutableSet.of("requests"), null, false);
+        rates.update("requests", -1, 1000, 0);
+        // restarted service, the delta is the new value
+        assertEquals(30, rates.update("requests", -1, 30, 1000), 1e-9);
+        assertEquals(10, rates.update("requests", -1, 40, 2000), 1e-9);
+    }
+
+    @Test
+    public void keepsTheOlderSampleWithinTheSameMs() {
+        CounterRates rates = new CounterRates(ImmutableSet.of("requests"), null, false);
+        rates.update("requests", -1, 0, 1000);
+        assertTrue(Double.isNaN(rates.update("requests", -1, 10, 1000)));
+        assertTrue(Double.isNaN(rates.update("requests", -1, 10, 999)));
+        assertEquals(20, rates.update("requests", -1, 20, 2000), 1e-9);
+    }
+
+    @Test
+    public void tracksElementsSeparately() {
+        CounterRates rates = new CounterRates(null, Pattern.compile(".*_total"), false);
+        rates.update("bytes_total", 0, 0, 0);
+        rates.update("bytes_total", 1, 1000, 0);
+        assertEquals(100, rates.update("bytes_total", 0, 100, 1000), 1e-9);
+        assertEquals(500, rates.update("bytes_total", 1, 1500, 1000), 1e-9);
+    }
+
+    @Test
+    public void tracksOtherFieldsOnlyForUnchangedValues() {
+        CounterRates rates = new CounterRates(ImmutableSet.of("requests"), null, true);
+        assertTrue(rates.isTracked("temperature"));
+        assertFalse(rates.isRateField("temperature"));
+        rates.update("temperature", -1, 20, 0);
+        assertFalse(rates.isUnchanged());
+        assertTrue(Double.isNaN(rates.update("temperature", -1, 20, 1000)));
+        assertTrue(rates.isUnchanged());
+        rates.update("temperature", -1, 21, 2000);
+        assertFalse(rates.isUnchanged());
+
+        assertFalse(new CounterRates(ImmutableSet.of("requests"), null, false).isTracked("temperature"));
+    }
+}
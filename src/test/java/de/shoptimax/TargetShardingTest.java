@@ -0,0 +1,138 @@
+package de.shoptimax;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TargetShardingTest {
+
+    private List<PollTarget> targets;
+
+    @Before
+    public void setUp() {
+        targets = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            targets.add(new PollTarget("target" + i, "http://host" + (i % 10) + "/status/" + i, 1, TimeUnit.MINUTES));
+        }
+    }
+
+    @Test
+    public void everyTargetHasExactlyOneOwner() {
+        Map<PollTarget, String> owners = owners(cluster("a", "b", "c"));
+        assertEquals(targets.size(), owners.size());
+        // roughly a third each
+        for (String node : Arrays.asList("a", "b", "c")) {
+            long owned = owners.values().stream().filter(node::equals).count();
+            assertTrue(node + " owns " + owned, owned > 200 && owned < 470);
+        }
+    }
+
+    @Test
+    public void singleNodeOwnsAllTargets() {
+        assertEquals(Collections.singleton("a"), new HashSet<>(owners(cluster("a")).values()));
+    }
+
+    @Test
+    public void joiningNodeOnlyTakesTargets() {
+        Map<PollTarget, String> before = owners(cluster("a", "b", "c"));
+        Map<PollTarget, String> after = owners(cluster("a", "b", "c", "d"));
+        int moved = 0;
+        for (PollTarget target : targets) {
+            if (!before.get(target).equals(after.get(target))) {
+                assertEquals("d", after.get(target));
+                moved++;
+            }
+        }
+        assertTrue("moved " + moved, moved > 150 && moved < 350);
+    }
+
+    @Test
+    public void leavingNodeOnlyGivesUpItsTargets() {
+        Map<PollTarget, String> before = owners(cluster("a", "b", "c"));
+        Map<PollTarget, String> after = owners(cluster("a", "b"));
+        for (PollTarget target : targets) {
+            if (!before.get(target).equals(after.get(target))) {
+                assertEquals("c", before.get(target));
+            }
+        }
+    }
+
+    @Test
+    public void acquiredTargetsLoadTheirWatermark() {
+        Set<PollTarget> loaded = new HashSet<>();
+        WatermarkStore watermarkStore = new WatermarkStore(null, "input") {
+            @Override
+            public void load(PollTarget target) {
+                loaded.add(target);
+            }
+        };
+        ClusterMembership.InMemory membership = new ClusterMembership.InMemory("a", Arrays.asList("a", "b", "c"));
+        TargetSharding sharding = new TargetSharding(membership, targets, new JRPMetrics(new MetricRegistry()),
+                watermarkStore::load);
+        sharding.refresh();
+        // the initial assignment is loaded by the input itself
+        assertTrue(loaded.isEmpty());
+        Set<PollTarget> ownedBefore = owned(sharding);
+
+        membership.setNodeIds(Arrays.asList("a", "b"));
+        sharding.refresh();
+        Set<PollTarget> acquired = owned(sharding);
+        acquired.removeAll(ownedBefore);
+        assertFalse(acquired.isEmpty());
+        assertEquals(acquired, loaded);
+
+        // an unchanged membership moves nothing
+        loaded.clear();
+        sharding.refresh();
+        assertTrue(loaded.isEmpty());
+    }
+
+    private Map<String, TargetSharding> cluster(String... nodeIds) {
+        Map<String, TargetSharding> cluster = new HashMap<>();
+        for (String nodeId : nodeIds) {
+            TargetSharding sharding = new TargetSharding(new ClusterMembership.InMemory(nodeId, Arrays.asList(nodeIds)),
+                    targets, new JRPMetrics(new MetricRegistry()), null);
+            sharding.refresh();
+            cluster.put(nodeId, sharding);
+        }
+        return cluster;
+    }
+
+    /**
+     * @return The owning node of every target, failing if a target has more than one
+     */
+    private Map<PollTarget, String> owners(Map<String, TargetSharding> cluster) {
+        Map<PollTarget, String> owners = new HashMap<>();
+        for (Map.Entry<String, TargetSharding> node : cluster.entrySet()) {
+            for (PollTarget target : owned(node.getValue())) {
+                String previous = owners.put(target, node.getKey());
+                assertTrue(target + " owned by " + previous + " and " + node.getKey(), previous == null);
+            }
+        }
+        return owners;
+    }
+
+    private Set<PollTarget> owned(TargetSharding sharding) {
+        Set<PollTarget> owned = new HashSet<>();
+        for (PollTarget target : targets) {
+            if (sharding.owns(target)) {
+                owned.add(target);
+            }
+        }
+        return owned;
+    }
+}
@@ -0,0 +1,107 @@
+package de.shoptimax.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class FieldProjectionTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String ELEMENT = "{\"id\":1,\"name\":\"db1\","
+            + "\"stats\":{\"reads\":5,\"writes\":6,\"cache\":{\"hits\":7}},"
+            + "\"tags\":[\"a\",\"b\"]}";
+
+    @Test
+    public void noneKeepsTheElement() throws Exception {
+        Map<String, Object> fields = project(FieldProjection.NONE, ELEMENT);
+        assertEquals(Arrays.asList("id", "name", "stats", "tags"), ImmutableList.copyOf(fields.keySet()));
+        assertEquals(MAPPER.readValue("{\"reads\":5,\"writes\":6,\"cache\":{\"hits\":7}}", Map.class),
+                fields.get("stats"));
+    }
+
+    @Test
+    public void includesFlattenObjectsWithRulesBelow() throws Exception {
+        FieldProjection projection = compile(Arrays.asList("id", "stats.reads", "stats.cache"),
+                Collections.emptyList(), false);
+        assertEquals(ImmutableMap.of("id", 1, "stats_reads", 5, "stats_cache", ImmutableMap.of("hits", 7)),
+                project(projection, ELEMENT));
+    }
+
+    @Test
+    public void excludesWinBelowIncludes() throws Exception {
+        FieldProjection projection = compile(Collections.singletonList("stats"),
+                Arrays.asList("stats.writes", "stats.cache.hits"), false);
+        assertEquals(ImmutableMap.of("stats_reads", 5), project(projection, ELEMENT));
+
+        projection = compile(Collections.emptyList(), Arrays.asList("name", "stats", "tags"), false);
+        assertEquals(ImmutableMap.of("id", 1), project(projection, ELEMENT));
+    }
+
+    @Test
+    public void wildcardsMatchAnyName() throws Exception {
+        String element = "{\"a\":{\"count\":1,\"x\":2},\"b\":{\"count\":3},\"c\":4}";
+        FieldProjection projection = compile(Collections.singletonList("*.count"), Collections.emptyList(), false);
+        assertEquals(ImmutableMap.of("a_count", 1, "b_count", 3), project(projection, element));
+
+        // a named sibling does not hide the wildcard rule
+        projection = compile(Collections.singletonList("*.count"), Collections.singletonList("a.x"), false);
+        assertEquals(ImmutableMap.of("a_count", 1, "b_count", 3), project(projection, element));
+        projection = compile(Collections.singletonList("*.count"), Collections.singletonList("a.count"), false);
+        assertEquals(ImmutableMap.of("b_count", 3), project(projection, element));
+    }
+
+    @Test
+    public void missingPathsKeepNothing() throws Exception {
+        FieldProjection projection = compile(Arrays.asList("missing", "stats.missing.deeper"),
+                Collections.singletonList("other.missing"), false);
+        assertEquals(Collections.emptyMap(), project(projection, ELEMENT));
+        assertEquals(Collections.emptyMap(), project(projection, "{}"));
+    }
+
+    @Test
+    public void flattensAndRenames() throws Exception {
+        FieldProjection projection = FieldProjection.compile(Collections.emptyList(), Collections.emptyList(),
+                ImmutableMap.of("stats.cache.hits", "cache_hits", "name", "db"), true);
+        Map<String, Object> fields = project(projection, ELEMENT);
+        assertEquals(ImmutableMap.builder().put("id", 1).put("db", "db1").put("stats_reads", 5)
+                .put("stats_writes", 6).put("cache_hits", 7).put("tags", Arrays.asList("a", "b")).build(), fields);
+        // the cached names are reused for the next element
+        assertEquals(fields, project(projection, ELEMENT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptySegments() {
+        compile(Collections.singletonList("stats..reads"), Collections.emptyList(), false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRenamedWildcards() {
+        FieldProjection.compile(Collections.emptyList(), Collections.emptyList(),
+                ImmutableMap.of("*.count", "count"), false);
+    }
+
+    private static FieldProjection compile(Iterable<String> includes, Iterable<String> excludes, boolean flatten) {
+        return FieldProjection.compile(ImmutableList.copyOf(includes), ImmutableList.copyOf(excludes),
+                Collections.emptyMap(), flatten);
+    }
+
+    private static Map<String, Object> project(FieldProjection projection, String json) throws IOException {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            parser.nextToken();
+            projection.project(parser, (name, p) -> fields.put(name, MAPPER.readValue(p, Object.class)));
+        }
+        return fields;
+    }
+}
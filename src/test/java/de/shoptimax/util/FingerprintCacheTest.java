@@ -0,0 +1,164 @@
+package de.shoptimax.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintCacheTest {
+
+    @Test
+    public void remembersFingerprints() {
+        FingerprintCache cache = new FingerprintCache(100);
+        assertFalse(cache.seen(42));
+        assertTrue(cache.seen(42));
+        assertFalse(cache.seen(-42));
+        assertFalse(cache.seen(Long.MIN_VALUE));
+        assertTrue(cache.seen(Long.MIN_VALUE));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void zeroIsStoredAsOne() {
+        FingerprintCache cache = new FingerprintCache(100);
+        assertFalse(cache.seen(0));
+        assertTrue(cache.seen(0));
+        assertTrue(cache.seen(1));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void holdsUpToTheCapacity() {
+        assertEquals(1, new FingerprintCache(0).capacity());
+        FingerprintCache cache = new FingerprintCache(5);
+        assertEquals(5, cache.capacity());
+        for (long i = 1; i <= 5; i++) {
+            assertFalse(cache.seen(i));
+        }
+        for (long i = 1; i <= 5; i++) {
+            assertTrue(cache.seen(i));
+        }
+    }
+
+    @Test
+    public void collidingFingerprintsWrapAroundTheTable() {
+        // capacity 8 uses a table of 16 slots
+        FingerprintCache cache = new FingerprintCache(8);
+        List<Long> lastSlot = keysWithHome(15, 16, 5);
+        for (long key : lastSlot) {
+            assertFalse(cache.seen(key));
+        }
+        for (long key : lastSlot) {
+            assertTrue(cache.seen(key));
+        }
+        List<Long> others = keysWithHome(7, 16, 3);
+        for (long key : others) {
+            assertFalse(cache.seen(key));
+            assertTrue(cache.seen(key));
+        }
+        assertEquals(8, cache.size());
+        // all referenced, the hand clears every bit and evicts the oldest from
+        // slot 15, which moves the wrapped entries of its probe sequence back
+        assertFalse(cache.seen(keysWithHome(3, 16, 1).get(0)));
+        assertEquals(8, cache.size());
+        for (long key : lastSlot.subList(1, lastSlot.size())) {
+            assertTrue(cache.seen(key));
+        }
+        assertFalse(cache.seen(lastSlot.get(0)));
+    }
+
+    @Test
+    public void evictsUnreferencedFingerprintsFirst() {
+        FingerprintCache cache = new FingerprintCache(4);
+        for (long i = 1; i <= 4; i++) {
+            cache.seen(i);
+        }
+        cache.seen(1);
+        cache.seen(3);
+        // 2 and then 4 have no second chance
+        assertFalse(cache.seen(5));
+        assertFalse(cache.seen(6));
+        assertEquals(4, cache.size());
+        assertTrue(cache.seen(1));
+        assertTrue(cache.seen(3));
+        assertTrue(cache.seen(5));
+        assertTrue(cache.seen(6));
+    }
+
+    @Test
+    public void matchesClockModelUnderChurn() {
+        Random random = new Random(17);
+        for (int capacity : Arrays.asList(1, 3, 8, 100)) {
+            FingerprintCache cache = new FingerprintCache(capacity);
+            ClockModel model = new ClockModel(capacity);
+            for (int i = 0; i < 20_000; i++) {
+                // small key space, so fingerprints recur and get evicted
+                long key = random.nextInt(capacity * 3) * 0x1_0000_0001L + 1;
+                assertEquals("capacity " + capacity + " step " + i, model.seen(key), cache.seen(key));
+                assertTrue(cache.size() <= capacity);
+            }
+            assertEquals(capacity, cache.size());
+        }
+    }
+
+    /**
+     * @return Keys whose probe sequence starts at the given slot, mirroring the spread of the cache
+     */
+    private static List<Long> keysWithHome(int slot, int tableSize, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 2; keys.size() < count; key++) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            if (((int) (h ^ (h >>> 32)) & (tableSize - 1)) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Straightforward CLOCK set to compare the cache with
+     */
+    private static class ClockModel {
+        private final long[] ring;
+        private final boolean[] referenced;
+        private final Map<Long, Integer> index = new HashMap<>();
+        private int size, hand;
+
+        private ClockModel(int capacity) {
+            ring = new long[capacity];
+            referenced = new boolean[capacity];
+        }
+
+        private boolean seen(long key) {
+            Integer i = index.get(key);
+            if (i != null) {
+                referenced[i] = true;
+                return true;
+            }
+            int slot;
+            if (size < ring.length) {
+                slot = size++;
+            } else {
+                while (referenced[hand]) {
+                    referenced[hand] = false;
+                    hand = (hand + 1) % ring.length;
+                }
+                slot = hand;
+                hand = (hand + 1) % ring.length;
+                index.remove(ring[slot]);
+            }
+            ring[slot] = key;
+            referenced[slot] = false;
+            index.put(key, slot);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.shoptimax.util;
+
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class HashingSourceTest {
+
+    private static final String BODY = "{\"status\":\"ok\",\"items\":[1,2,3]}\n";
+
+    @Test
+    public void hashesAllBytesRead() throws Exception {
+        HashingSource hashing = new HashingSource(new Buffer().writeUtf8(BODY));
+        BufferedSource source = Okio.buffer(hashing);
+        assertEquals(BODY, source.readUtf8());
+        source.close();
+        assertEquals(Hashing.murmur3_128().hashString(BODY, StandardCharsets.UTF_8).asLong(), hashing.hash());
+    }
+
+    @Test
+    public void closeHashesTheUnreadRest() throws Exception {
+        // larger than the segments read ahead by the buffered source
+        String body = Strings.repeat(BODY, 5000);
+        HashingSource hashing = new HashingSource(new Buffer().writeUtf8(body));
+        BufferedSource source = Okio.buffer(hashing);
+        source.readUtf8(5);
+        source.close();
+        assertEquals(Hashing.murmur3_128().hashString(body, StandardCharsets.UTF_8).asLong(), hashing.hash());
+    }
+
+    @Test
+    public void differentBodiesHashDifferently() throws Exception {
+        assertNotEquals(hash(BODY), hash(BODY.replace('3', '4')));
+    }
+
+    private static long hash(String body) throws Exception {
+        HashingSource hashing = new HashingSource(new Buffer().writeUtf8(body));
+        Okio.buffer(hashing).close();
+        return hashing.hash();
+    }
+}
@@ -0,0 +1,104 @@
+package de.shoptimax.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class JsonRootPathTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String DOCUMENT = "{\"meta\":{\"page\":1},\"data\":{\"items\":[{\"id\":1},{\"id\":2},{\"id\":3}]},"
+            + "\"other\":{\"items\":[{\"id\":4}]}}";
+
+    @Test
+    public void documentMatchesTheWholeBody() throws Exception {
+        assertEquals(Collections.singletonList(MAPPER.readValue(DOCUMENT, Map.class)),
+                extract(JsonRootPath.DOCUMENT, DOCUMENT));
+        assertEquals(Collections.emptyList(), extract(JsonRootPath.DOCUMENT, ""));
+    }
+
+    @Test
+    public void selectsArrayElements() throws Exception {
+        assertEquals(ids(1, 2, 3), extract(JsonRootPath.compile("$.data.items[*]"), DOCUMENT));
+        assertEquals(ids(2), extract(JsonRootPath.compile("$['data'].items[1]"), DOCUMENT));
+        assertEquals(ids(), extract(JsonRootPath.compile("$.data.items[5]"), DOCUMENT));
+    }
+
+    @Test
+    public void wildcardsMatchAnyNameOrIndex() throws Exception {
+        assertEquals(ids(1, 2, 3, 4), extract(JsonRootPath.compile("$.*.items[*]"), DOCUMENT));
+        assertEquals(ids(1, 2, 3, 4), extract(JsonRootPath.compile("$[*].items.*"), DOCUMENT));
+    }
+
+    @Test
+    public void missingKeysMatchNothing() throws Exception {
+        assertEquals(ids(), extract(JsonRootPath.compile("$.missing[*]"), DOCUMENT));
+        assertEquals(ids(), extract(JsonRootPath.compile("$.meta.page.deeper"), DOCUMENT));
+        // a name does not match an array element and an index no object field
+        assertEquals(ids(), extract(JsonRootPath.compile("$.data.items.id"), DOCUMENT));
+        assertEquals(ids(), extract(JsonRootPath.compile("$.data[0]"), DOCUMENT));
+    }
+
+    @Test
+    public void selectsFromArraysAtTheRoot() throws Exception {
+        String array = "[{\"id\":1},{\"id\":2},7,[{\"id\":3}]]";
+        assertEquals(Arrays.asList(MAPPER.readValue("{\"id\":1}", Map.class), MAPPER.readValue("{\"id\":2}", Map.class),
+                7, Collections.singletonList(MAPPER.readValue("{\"id\":3}", Map.class))),
+                extract(JsonRootPath.compile("$[*]"), array));
+        assertEquals(Arrays.asList(1, 2), extract(JsonRootPath.compile("$[*].id"), array));
+        assertEquals(ids(3), extract(JsonRootPath.compile("$[3][0]"), array));
+    }
+
+    @Test
+    public void matchesTwoPathsInOnePass() throws Exception {
+        List<Object> items = new ArrayList<>();
+        List<Object> pages = new ArrayList<>();
+        try (JsonParser parser = MAPPER.getFactory().createParser(DOCUMENT)) {
+            int matched = JsonRootPath.compile("$.data.items[*]").extract(parser,
+                    p -> items.add(MAPPER.readValue(p, Object.class)),
+                    JsonRootPath.compile("$.meta.page"), p -> pages.add(MAPPER.readValue(p, Object.class)));
+            assertEquals(3, matched);
+        }
+        assertEquals(ids(1, 2, 3), items);
+        assertEquals(Collections.singletonList(1), pages);
+    }
+
+    @Test
+    public void rejectsUnsupportedPaths() {
+        for (String path : Arrays.asList("items", "$.", "$..items", "$.items[", "$.items[?(@.id)]", "$x")) {
+            try {
+                JsonRootPath.compile(path);
+                fail(path);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static List<Object> extract(JsonRootPath path, String json) throws IOException {
+        List<Object> elements = new ArrayList<>();
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            assertEquals(path.extract(parser, p -> elements.add(MAPPER.readValue(p, Object.class))), elements.size());
+        }
+        return elements;
+    }
+
+    private static List<Object> ids(int... ids) throws IOException {
+        List<Object> elements = new ArrayList<>();
+        for (int id : ids) {
+            elements.add(MAPPER.readValue("{\"id\":" + id + "}", Map.class));
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,220 @@
+package de.shoptimax.util;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecordBatchTest {
+
+    @Test
+    public void roundTripsAllFieldTypes() {
+        // grows from the smallest buffer
+        RecordBatch batch = new RecordBatch(0);
+        batch.nullField("null");
+        batch.booleanField("false", false);
+        batch.booleanField("true", true);
+        batch.longField("zero", 0);
+        batch.longField("negative", -1);
+        batch.longField("min", Long.MIN_VALUE);
+        batch.longField("max", Long.MAX_VALUE);
+        batch.doubleField("double", -0.125);
+        batch.stringField("string", "grüße ☃");
+        batch.stringField("empty", "");
+        batch.jsonField("json", "{\"a\":[1,2]}");
+        batch.endRecord();
+
+        List<Map<String, Object>> records = read(batch.toByteArray());
+        assertEquals(1, records.size());
+        Map<String, Object> record = records.get(0);
+        assertEquals(Arrays.asList("null", "false", "true", "zero", "negative", "min", "max", "double", "string",
+                "empty", "json"), new ArrayList<>(record.keySet()));
+        assertEquals(null, record.get("null"));
+        assertEquals(Boolean.FALSE, record.get("false"));
+        assertEquals(Boolean.TRUE, record.get("true"));
+        assertEquals(0L, record.get("zero"));
+        assertEquals(-1L, record.get("negative"));
+        assertEquals(Long.MIN_VALUE, record.get("min"));
+        assertEquals(Long.MAX_VALUE, record.get("max"));
+        assertEquals(-0.125, record.get("double"));
+        assertEquals("grüße ☃", record.get("string"));
+        assertEquals("", record.get("empty"));
+        assertEquals("{\"a\":[1,2]}", record.get("json"));
+    }
+
+    @Test
+    public void mapsObjectValuesToFieldTypes() {
+        RecordBatch batch = new RecordBatch(64);
+        batch.field("int", 7);
+        batch.field("float", 1.5f);
+        batch.field("decimal", new BigDecimal("2.5"));
+        batch.field("small", BigInteger.TEN);
+        batch.field("huge", BigInteger.ONE.shiftLeft(64));
+        batch.field("other", new StringBuilder("text"));
+        batch.field("null", null);
+        batch.endRecord();
+
+        Map<String, Object> record = read(batch.toByteArray()).get(0);
+        assertEquals(7L, record.get("int"));
+        assertEquals(1.5, record.get("float"));
+        assertEquals(2.5, record.get("decimal"));
+        assertEquals(10L, record.get("small"));
+        assertEquals(Math.pow(2, 64), record.get("huge"));
+        assertEquals("text", record.get("other"));
+        assertTrue(record.containsKey("null"));
+    }
+
+    @Test
+    public void reusesKeyIndexesAcrossRecords() {
+        RecordBatch batch = new RecordBatch(64);
+        for (int i = 0; i < 3; i++) {
+            batch.longField("id", i);
+            batch.stringField("name", "n" + i);
+            batch.endRecord();
+        }
+        // the keys are written once, later records refer to their index
+        assertEquals(1, count(batch.toByteArray(), "name".getBytes(StandardCharsets.UTF_8)));
+
+        List<Map<String, Object>> records = read(batch.toByteArray());
+        assertEquals(3, records.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals((long) i, records.get(i).get("id"));
+            assertEquals("n" + i, records.get(i).get("name"));
+        }
+    }
+
+    @Test
+    public void discardsPartialRecordWithItsNewKeys() {
+        RecordBatch batch = new RecordBatch(64);
+        batch.longField("id", 1);
+        batch.stringField("name", "first");
+        batch.endRecord();
+        int size = batch.size();
+
+        // a partial record with a known and two new keys, one used twice
+        batch.longField("id", 2);
+        batch.stringField("extra", "x");
+        batch.stringField("extra", "y");
+        batch.booleanField("flag", true);
+        batch.discardRecord();
+        assertEquals(size, batch.size());
+        assertEquals(1, batch.getRecords());
+
+        // the discarded keys must be written out again, not referenced by index
+        batch.booleanField("flag", false);
+        batch.longField("id", 3);
+        batch.stringField("extra", "z");
+        batch.endRecord();
+
+        List<Map<String, Object>> records = read(batch.toByteArray());
+        assertEquals(2, records.size());
+        assertEquals(2, records.get(0).size());
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("flag", false);
+        expected.put("id", 3L);
+        expected.put("extra", "z");
+        assertEquals(expected, records.get(1));
+    }
+
+    @Test
+    public void excludesPartialRecordFromPayload() {
+        RecordBatch batch = new RecordBatch(64);
+        batch.longField("id", 1);
+        batch.endRecord();
+        byte[] complete = batch.toByteArray();
+        batch.stringField("pending", "value");
+        assertArrayEquals(complete, batch.toByteArray());
+        assertEquals(1, read(batch.toByteArray()).size());
+    }
+
+    @Test
+    public void resetStartsAnEmptyBatch() {
+        RecordBatch batch = new RecordBatch(64);
+        batch.longField("id", 1);
+        batch.endRecord();
+        batch.reset();
+        assertEquals(0, batch.getRecords());
+        assertEquals(0, read(batch.toByteArray()).size());
+        batch.stringField("name", "after");
+        batch.endRecord();
+        assertEquals("after", read(batch.toByteArray()).get(0).get("name"));
+    }
+
+    @Test
+    public void tellsBatchesFromJson() {
+        assertTrue(RecordBatch.isBatch(new RecordBatch(16).toByteArray()));
+        assertFalse(RecordBatch.isBatch("{\"short_message\":\"x\"}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(RecordBatch.isBatch(new byte[]{0}));
+    }
+
+    @Test
+    public void rejectsInvalidPayloads() {
+        RecordBatch batch = new RecordBatch(64);
+        batch.stringField("name", "value");
+        batch.endRecord();
+        byte[] payload = batch.toByteArray();
+
+        assertInvalid(Arrays.copyOf(payload, payload.length - 3));
+        byte[] wrongVersion = payload.clone();
+        wrongVersion[2] = 99;
+        assertInvalid(wrongVersion);
+        byte[] unknownType = payload.clone();
+        unknownType[3] = 42;
+        assertInvalid(unknownType);
+        // a key referenced before it was written
+        assertInvalid(new byte[]{0, 'J', 1, RecordBatch.TYPE_NULL, 1, (byte) 0xFF});
+    }
+
+    private static void assertInvalid(byte[] payload) {
+        try {
+            RecordBatch.read(payload, new Collector());
+            fail("invalid payload accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static List<Map<String, Object>> read(byte[] payload) {
+        Collector collector = new Collector();
+        assertEquals(RecordBatch.read(payload, collector), collector.records.size());
+        return collector.records;
+    }
+
+    private static int count(byte[] payload, byte[] bytes) {
+        int count = 0;
+        for (int i = 0; i + bytes.length <= payload.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(payload, i, i + bytes.length), bytes)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static class Collector implements RecordBatch.RecordHandler {
+        private final List<Map<String, Object>> records = new ArrayList<>();
+        private Map<String, Object> record = new LinkedHashMap<>();
+
+        @Override
+        public void field(String key, Object value) {
+            record.put(key, value);
+        }
+
+        @Override
+        public void endRecord() {
+            records.add(record);
+            record = new LinkedHashMap<>();
+        }
+    }
+}
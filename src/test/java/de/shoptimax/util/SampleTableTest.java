@@ -0,0 +1,59 @@
+package de.shoptimax.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SampleTableTest {
+
+    @Test
+    public void keysFieldsByNameAndElement() {
+        SampleTable table = new SampleTable(100);
+        assertEquals(-1, table.find("reads", -1));
+        assertTrue(table.add("reads", -1, 1, 10));
+        assertTrue(table.add("reads", 0, 2, 20));
+        assertTrue(table.add("writes", 0, 3, 30));
+        assertEquals(3, table.size());
+
+        int slot = table.find("reads", 0);
+        assertEquals(2, table.valueAt(slot), 0);
+        assertEquals(20, table.timeAt(slot));
+        assertNotEquals(slot, table.find("reads", -1));
+        assertEquals(-1, table.find("reads", 1));
+
+        table.setAt(slot, 5, 50);
+        assertEquals(5, table.valueAt(table.find("reads", 0)), 0);
+        assertEquals(50, table.timeAt(table.find("reads", 0)));
+    }
+
+    @Test
+    public void keepsSamplesWhileGrowing() {
+        SampleTable table = new SampleTable(10_000);
+        // the same name for many elements and many names, colliding in the small initial table
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(table.add("value", i, i, i));
+            assertTrue(table.add("field" + i, -1, -i, i));
+        }
+        assertEquals(10_000, table.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, table.valueAt(table.find("value", i)), 0);
+            assertEquals(-i, table.valueAt(table.find("field" + i, -1)), 0);
+            assertEquals(i, table.timeAt(table.find("field" + i, -1)));
+        }
+    }
+
+    @Test
+    public void rejectsFieldsBeyondMaxSize() {
+        SampleTable table = new SampleTable(3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(table.add("f" + i, -1, i, 0));
+        }
+        assertFalse(table.add("f3", -1, 3, 0));
+        assertEquals(3, table.size());
+        assertEquals(-1, table.find("f3", -1));
+        assertEquals(2, table.valueAt(table.find("f2", -1)), 0);
+    }
+}
@@ -0,0 +1,71 @@
+package de.shoptimax.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    private static final long TICK_MS = 10;
+    private static final long PERIOD_MS = 50;
+
+    private final TimerWheel wheel = new TimerWheel(TICK_MS, 64, Thread::new, null);
+
+    @After
+    public void tearDown() {
+        wheel.shutdown();
+    }
+
+    @Test
+    public void runsAtTheWallClockDeadline() throws Exception {
+        CountDownLatch runs = new CountDownLatch(3);
+        List<Long> deadlines = new CopyOnWriteArrayList<>();
+        long first = System.currentTimeMillis() + 100;
+        wheel.schedule(first, PERIOD_MS, deadline -> {
+            deadlines.add(deadline);
+            assertTrue("ran early", System.currentTimeMillis() >= deadline - TICK_MS);
+            runs.countDown();
+        });
+        assertTrue(runs.await(5, TimeUnit.SECONDS));
+        // the planned times stay on the grid of the first deadline
+        for (int i = 0; i < 3; i++) {
+            assertEquals(first + i * PERIOD_MS, deadlines.get(i), TICK_MS);
+        }
+    }
+
+    @Test
+    public void coalescesMissedRounds() throws Exception {
+        List<Long> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        wheel.schedule(System.currentTimeMillis(), PERIOD_MS, deadline -> {
+            runs.add(System.nanoTime());
+            if (runs.size() == 1) {
+                // blocks the wheel thread for six rounds, like a long GC pause
+                sleep(6 * PERIOD_MS);
+            } else if (runs.size() == 4) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // without coalescing the missed rounds would run one per tick
+        for (int i = 2; i < 4; i++) {
+            long gapMs = TimeUnit.NANOSECONDS.toMillis(runs.get(i) - runs.get(i - 1));
+            assertTrue("run " + i + " after " + gapMs + " ms", gapMs >= PERIOD_MS - TICK_MS);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}